@@ -0,0 +1,78 @@
+package com.weathernews.loadtest;
+
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Behaviour of one mocked upstream: a log-normal latency distribution given by its
+ * median and 99th percentile, an error rate and extra payload bytes.
+ *
+ * Read from "mock.&lt;name&gt;.*" properties:
+ * latency.median.ms, latency.p99.ms, error.rate (percent of requests answered with 500)
+ * and padding.bytes (filler added to every response body).
+ */
+public class EndpointProfile {
+    // z-score of the 99th percentile of the standard normal distribution
+    private static final double P99_Z = 2.3263;
+    
+    private final String name;
+    private final double medianMillis;
+    private final double sigma;
+    private final double errorRate;
+    private final int paddingBytes;
+    
+    /**
+     * @param name Endpoint name, e.g. "weather"
+     * @param config Properties holding the "mock.&lt;name&gt;.*" keys
+     * @param defaultMedianMillis Median latency if not configured
+     * @param defaultP99Millis 99th percentile latency if not configured
+     */
+    public EndpointProfile(String name, Properties config, double defaultMedianMillis, double defaultP99Millis) {
+        String prefix = "mock." + name + ".";
+        this.name = name;
+        this.medianMillis = Double.parseDouble(config.getProperty(prefix + "latency.median.ms",
+                String.valueOf(defaultMedianMillis)));
+        double p99Millis = Double.parseDouble(config.getProperty(prefix + "latency.p99.ms",
+                String.valueOf(defaultP99Millis)));
+        this.sigma = medianMillis > 0 && p99Millis > medianMillis
+                ? Math.log(p99Millis / medianMillis) / P99_Z
+                : 0;
+        this.errorRate = Double.parseDouble(config.getProperty(prefix + "error.rate", "0")) / 100.0;
+        this.paddingBytes = Integer.parseInt(config.getProperty(prefix + "padding.bytes", "0"));
+        if (medianMillis < 0 || errorRate < 0 || errorRate > 1 || paddingBytes < 0) {
+            throw new IllegalArgumentException("Invalid mock profile for " + name);
+        }
+    }
+    
+    /**
+     * @return A random latency drawn from the distribution, in nanoseconds
+     */
+    public long sampleLatencyNanos() {
+        if (medianMillis == 0) {
+            return 0;
+        }
+        double millis = medianMillis * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian());
+        return (long) (millis * 1_000_000);
+    }
+    
+    /**
+     * @return True if the next request should fail
+     */
+    public boolean sampleError() {
+        return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+    }
+    
+    public int getPaddingBytes() {
+        return paddingBytes;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%s: median=%.0fms p99=%.0fms errors=%.1f%% padding=%dB",
+                name, medianMillis, medianMillis * Math.exp(sigma * P99_Z), errorRate * 100, paddingBytes);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,201 @@
+package com.weathernews.loadtest;
+
+import com.weathernews.WeatherNewsApp;
+import com.weathernews.metrics.LatencyHistogram;
+import com.weathernews.service.ZipcodeReportService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load test of the zipcode report flow (geocode, then weather and news) against a
+ * {@link MockUpstream}, so capacity can be measured on a laptop without network access.
+ *
+ * Requests arrive at a fixed rate regardless of how fast earlier ones complete, and each
+ * latency is measured from the request's scheduled start, so queueing delay is included
+ * instead of hidden by a slowed-down load generator.
+ *
+ * Usage: LoadTest [--rate &lt;per second&gt;] [--duration &lt;seconds&gt;] [--warmup &lt;seconds&gt;]
+ *                 [--zipcodes &lt;distinct zipcodes&gt;] [--profile &lt;file.properties&gt;]
+ *
+ * The profile holds "mock.*" keys for the {@link MockUpstream}; all other keys override the
+ * application's config.properties, e.g. to disable a cache.
+ */
+public class LoadTest {
+    private static final int MAX_OUTSTANDING = 10_000;
+    
+    private final ZipcodeReportService reportService;
+    private final double ratePerSecond;
+    private final int[] zipcodes;
+    /** One sequence across runs, so the measured run does not replay the zipcodes the warmup fetched */
+    private final Random random = new Random(42);
+    private final LatencyHistogram succeeded = new LatencyHistogram();
+    private final LatencyHistogram failed = new LatencyHistogram();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    
+    /**
+     * @param reportService The flow under test
+     * @param ratePerSecond Arrival rate
+     * @param zipcodes Zipcodes to draw requests from, uniformly
+     */
+    public LoadTest(ZipcodeReportService reportService, double ratePerSecond, int[] zipcodes) {
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        this.reportService = reportService;
+        this.ratePerSecond = ratePerSecond;
+        this.zipcodes = zipcodes;
+    }
+    
+    /**
+     * Issue requests at the fixed rate for the given time, then wait for all of them
+     * @param seconds Duration of the arrival phase
+     * @param record Whether to record latencies (false for warmup)
+     * @return Wall clock time from the first arrival until the last completion, in nanoseconds
+     */
+    public long run(double seconds, boolean record) {
+        long intervalNanos = (long) (1_000_000_000L / ratePerSecond);
+        long total = (long) (seconds * ratePerSecond);
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; i < total; i++) {
+                long scheduled = start + i * intervalNanos;
+                long wait = scheduled - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                String zipcode = String.format("%05d", zipcodes[random.nextInt(zipcodes.length)]);
+                if (outstanding.incrementAndGet() > MAX_OUTSTANDING) {
+                    // The system has fallen too far behind; count the arrival as failed
+                    outstanding.decrementAndGet();
+                    dropped.increment();
+                    continue;
+                }
+                executor.execute(() -> {
+                    try {
+                        reportService.getReport(zipcode);
+                        if (record) {
+                            succeeded.record(System.nanoTime() - scheduled);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        if (record) {
+                            failed.record(System.nanoTime() - scheduled);
+                        }
+                    } finally {
+                        outstanding.decrementAndGet();
+                    }
+                });
+            }
+        }
+        return System.nanoTime() - start;
+    }
+    
+    /**
+     * @param elapsedNanos Duration returned by {@link #run}
+     * @return Throughput and latency percentiles of the recorded requests
+     */
+    public String report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long completed = succeeded.getCount() + failed.getCount();
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Offered rate:  %.1f/s%n", ratePerSecond));
+        report.append(String.format("Throughput:    %.1f/s (%d requests in %.1fs)%n",
+                completed / seconds, completed, seconds));
+        report.append(String.format("Succeeded:     %d%n", succeeded.getCount()));
+        report.append(String.format("Failed:        %d%n", failed.getCount()));
+        report.append(String.format("Dropped:       %d (more than %d outstanding)%n", dropped.sum(), MAX_OUTSTANDING));
+        report.append(String.format("Latency (ms):  p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f mean=%.1f%n",
+                succeeded.getPercentileMillis(50), succeeded.getPercentileMillis(90),
+                succeeded.getPercentileMillis(99), succeeded.getPercentileMillis(99.9),
+                succeeded.getMaxMillis(), succeeded.getMeanMillis()));
+        if (failed.getCount() > 0) {
+            report.append(String.format("Failed (ms):   p50=%.1f p99=%.1f max=%.1f%n",
+                    failed.getPercentileMillis(50), failed.getPercentileMillis(99), failed.getMaxMillis()));
+        }
+        return report.toString();
+    }
+    
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        double rate = Double.parseDouble(options.getOrDefault("rate", "50"));
+        double duration = Double.parseDouble(options.getOrDefault("duration", "30"));
+        double warmup = Double.parseDouble(options.getOrDefault("warmup", "5"));
+        int distinct = Integer.parseInt(options.getOrDefault("zipcodes", "5000"));
+        
+        Properties profile = new Properties();
+        if (options.containsKey("profile")) {
+            try (InputStream input = Files.newInputStream(Paths.get(options.get("profile")))) {
+                profile.load(input);
+            }
+        }
+        
+        MockUpstream upstream = new MockUpstream(profile);
+        upstream.start();
+        Properties config = WeatherNewsApp.loadConfiguration();
+        config.setProperty("weather.api.url", upstream.getWeatherApiUrl());
+        config.setProperty("geocoding.api.url", upstream.getGeocodingApiUrl());
+        config.setProperty("news.api.url", upstream.getNewsApiUrl());
+        config.setProperty("zipcode.gazetteer.path", "");
+        config.setProperty("metrics.log.interval.seconds", "0");
+        for (String key : profile.stringPropertyNames()) {
+            if (!key.startsWith("mock.")) {
+                config.setProperty(key, profile.getProperty(key));
+            }
+        }
+        
+        WeatherNewsApp app = new WeatherNewsApp(config);
+        try {
+            LoadTest test = new LoadTest(app.getReportService(), rate, zipcodes(distinct));
+            if (warmup > 0) {
+                System.err.printf("Warming up for %.0fs at %.1f/s...%n", warmup, rate);
+                test.run(warmup, false);
+            }
+            System.err.printf("Running for %.0fs at %.1f/s over %d zipcodes...%n", duration, rate, distinct);
+            long elapsed = test.run(duration, true);
+            System.out.print(test.report(elapsed));
+            System.out.println(upstream);
+        } finally {
+            // Logs the per-operation and per-upstream metrics summary
+            app.cleanup();
+            upstream.stop();
+        }
+    }
+    
+    /**
+     * Evenly spaced valid zipcodes between 01000 and 99999
+     */
+    private static int[] zipcodes(int count) {
+        if (count <= 0 || count > 99_000) {
+            throw new IllegalArgumentException("Zipcode count must be between 1 and 99000");
+        }
+        int[] zipcodes = new int[count];
+        for (int i = 0; i < count; i++) {
+            zipcodes[i] = 1_000 + (int) ((long) i * 99_000 / count);
+        }
+        return zipcodes;
+    }
+    
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Usage: LoadTest [--rate <per second>] [--duration <seconds>] "
+                        + "[--warmup <seconds>] [--zipcodes <n>] [--profile <file.properties>]");
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+} 
\ No newline at end of file
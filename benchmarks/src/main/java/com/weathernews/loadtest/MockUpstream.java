@@ -0,0 +1,326 @@
+package com.weathernews.loadtest;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local stand-in for the OpenWeatherMap geocoding and weather APIs and NewsAPI.
+ * Serves the same paths and payload shapes as the real services under one loopback port,
+ * with per-upstream latency, error rate and payload size taken from an {@link EndpointProfile}.
+ *
+ * News pages hold up to mock.news.articles articles (default 100) whose content is
+ * mock.news.content.chars characters long (default 200).
+ */
+public class MockUpstream {
+    private final EndpointProfile geocoding;
+    private final EndpointProfile weather;
+    private final EndpointProfile news;
+    private final int maxArticles;
+    private final int contentChars;
+    private final Gson gson = new Gson();
+    private final Map<Integer, byte[]> newsPages = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> served = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> failed = new ConcurrentHashMap<>();
+    
+    private HttpServer server;
+    private ExecutorService executor;
+    
+    /**
+     * @param config Properties holding the "mock.*" keys; missing keys use defaults close to
+     *               the real APIs seen from a home connection
+     */
+    public MockUpstream(Properties config) {
+        this.geocoding = new EndpointProfile("geocoding", config, 60, 250);
+        this.weather = new EndpointProfile("weather", config, 80, 400);
+        this.news = new EndpointProfile("news", config, 150, 900);
+        this.maxArticles = Integer.parseInt(config.getProperty("mock.news.articles", "100"));
+        this.contentChars = Integer.parseInt(config.getProperty("mock.news.content.chars", "200"));
+    }
+    
+    /**
+     * Start serving on a free loopback port
+     * @throws IOException if the server cannot be bound
+     */
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Mock upstream already started");
+        }
+        // Without TCP_NODELAY, delayed ACKs add ~40ms to responses written in two segments
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.setExecutor(executor);
+        server.createContext("/geo/1.0/zip", exchange -> handle(exchange, geocoding, this::zipResponse));
+        server.createContext("/geo/1.0/direct", exchange -> handle(exchange, geocoding, this::directResponse));
+        server.createContext("/data/2.5/weather", exchange -> handle(exchange, weather, this::weatherResponse));
+        server.createContext("/data/2.5/group", exchange -> handle(exchange, weather, this::groupResponse));
+        server.createContext("/v2/everything", exchange -> handle(exchange, news, this::newsResponse));
+        server.createContext("/v2/top-headlines", exchange -> handle(exchange, news, this::newsResponse));
+        server.start();
+    }
+    
+    /**
+     * Stop serving
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+    
+    /**
+     * @return Value for the geocoding.api.url setting
+     */
+    public String getGeocodingApiUrl() {
+        return baseUrl() + "/geo/1.0";
+    }
+    
+    /**
+     * @return Value for the weather.api.url setting
+     */
+    public String getWeatherApiUrl() {
+        return baseUrl() + "/data/2.5";
+    }
+    
+    /**
+     * @return Value for the news.api.url setting
+     */
+    public String getNewsApiUrl() {
+        return baseUrl() + "/v2";
+    }
+    
+    private synchronized String baseUrl() {
+        if (server == null) {
+            throw new IllegalStateException("Mock upstream not started");
+        }
+        return "http://" + server.getAddress().getAddress().getHostAddress() + ":" + server.getAddress().getPort();
+    }
+    
+    private void handle(HttpExchange exchange, EndpointProfile profile, Responder responder) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            sleepNanos(profile.sampleLatencyNanos());
+            if (profile.sampleError()) {
+                failed.computeIfAbsent(path, key -> new LongAdder()).increment();
+                send(exchange, 500, "{\"cod\":500,\"message\":\"Mock upstream error\"}"
+                        .getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            byte[] body;
+            try {
+                body = responder.respond(queryParameters(exchange.getRequestURI().getRawQuery()),
+                        padding(profile));
+            } catch (RuntimeException e) {
+                // Answer malformed requests while the exchange is still open
+                send(exchange, 400, ("{\"cod\":400,\"message\":\"" + e.getMessage() + "\"}")
+                        .getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            served.computeIfAbsent(path, key -> new LongAdder()).increment();
+            send(exchange, 200, body);
+        }
+    }
+    
+    private byte[] zipResponse(Map<String, String> params, String padding) {
+        String zip = params.getOrDefault("zip", "").split(",")[0];
+        int key = Integer.parseInt(zip);
+        return String.format(Locale.ROOT,
+                "{\"zip\":\"%s\",\"name\":\"Mock City %s\",\"lat\":%.4f,\"lon\":%.4f,\"country\":\"US\"%s}",
+                zip, zip, latitudeOf(key), longitudeOf(key), padding).getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private byte[] directResponse(Map<String, String> params, String padding) {
+        String[] query = params.getOrDefault("q", "").split(",");
+        int key = Math.floorMod(query[0].hashCode(), 100_000);
+        return String.format(Locale.ROOT,
+                "[{\"name\":\"%s\",\"lat\":%.4f,\"lon\":%.4f,\"country\":\"US\",\"state\":\"%s\"%s}]",
+                query[0], latitudeOf(key), longitudeOf(key), query.length > 1 ? query[1] : "", padding)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private byte[] weatherResponse(Map<String, String> params, String padding) {
+        double latitude;
+        double longitude;
+        if (params.containsKey("zip")) {
+            int key = Integer.parseInt(params.get("zip").split(",")[0]);
+            latitude = latitudeOf(key);
+            longitude = longitudeOf(key);
+        } else {
+            latitude = Double.parseDouble(params.get("lat"));
+            longitude = Double.parseDouble(params.get("lon"));
+        }
+        return observation(stationId(latitude, longitude), latitude, longitude, padding)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private byte[] groupResponse(Map<String, String> params, String padding) {
+        String[] ids = params.getOrDefault("id", "").split(",");
+        StringBuilder body = new StringBuilder(ids.length * 500);
+        body.append("{\"cnt\":").append(ids.length).append(",\"list\":[");
+        for (int i = 0; i < ids.length; i++) {
+            int id = Integer.parseInt(ids[i]);
+            if (i > 0) {
+                body.append(',');
+            }
+            // Station ids encode the cell they were handed out for
+            body.append(observation(id, id / 10_000 / 10.0, -(id % 10_000) / 10.0, ""));
+        }
+        return body.append(']').append(padding).append('}').toString().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private byte[] newsResponse(Map<String, String> params, String padding) {
+        int pageSize = Integer.parseInt(params.getOrDefault("pageSize", "20"));
+        int articles = Math.max(0, Math.min(pageSize, maxArticles));
+        byte[] page = newsPages.computeIfAbsent(articles, this::newsPage);
+        if (padding.isEmpty()) {
+            return page;
+        }
+        String json = new String(page, StandardCharsets.UTF_8);
+        return (json.substring(0, json.length() - 1) + padding + "}").getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private byte[] newsPage(int articles) {
+        JsonObject page = new JsonObject();
+        page.addProperty("status", "ok");
+        page.addProperty("totalResults", 1000);
+        JsonArray list = new JsonArray();
+        for (int i = 0; i < articles; i++) {
+            JsonObject source = new JsonObject();
+            source.add("id", null);
+            source.addProperty("name", "Mock News " + (i % 7));
+            JsonObject article = new JsonObject();
+            article.add("source", source);
+            article.addProperty("author", "Staff Writer");
+            article.addProperty("title", "Mock headline number " + i + " about the local area");
+            article.addProperty("description", "A short summary of mock article " + i
+                    + " that is about as long as a typical NewsAPI description.");
+            article.addProperty("url", "https://news.example.com/articles/" + i);
+            article.addProperty("urlToImage", "https://news.example.com/images/" + i + ".jpg");
+            article.addProperty("publishedAt", String.format(Locale.ROOT, "2024-10-14T%02d:%02d:00Z",
+                    23 - i % 24, i % 60));
+            article.addProperty("content", "x".repeat(contentChars) + "… [+2048 chars]");
+            list.add(article);
+        }
+        page.add("articles", list);
+        return gson.toJson(page).getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static String observation(int id, double latitude, double longitude, String padding) {
+        return String.format(Locale.ROOT,
+                "{\"coord\":{\"lon\":%.4f,\"lat\":%.4f},"
+                        + "\"weather\":[{\"id\":800,\"main\":\"Clear\",\"description\":\"clear sky\",\"icon\":\"01d\"}],"
+                        + "\"base\":\"stations\",\"main\":{\"temp\":72.5,\"feels_like\":74.1,\"temp_min\":69.4,"
+                        + "\"temp_max\":74.9,\"pressure\":1013,\"humidity\":65},\"visibility\":10000,"
+                        + "\"wind\":{\"speed\":5.2,\"deg\":250},\"clouds\":{\"all\":0},\"dt\":1728923400,"
+                        + "\"sys\":{\"country\":\"US\",\"sunrise\":1728914123,\"sunset\":1728955790},"
+                        + "\"timezone\":-25200,\"id\":%d,\"name\":\"Mock Station %d\",\"cod\":200%s}",
+                longitude, latitude, id, id, padding);
+    }
+    
+    /**
+     * Synthetic coordinates inside the continental US, spread so that neighbouring
+     * zipcodes land in different weather cells
+     */
+    private static double latitudeOf(int key) {
+        return 25 + (key % 2_300) / 100.0;
+    }
+    
+    private static double longitudeOf(int key) {
+        return -70 - (key / 2_300 % 5_000) / 100.0;
+    }
+    
+    /**
+     * One station per 0.1 degree cell; the id encodes the cell so group requests can be answered
+     */
+    private static int stationId(double latitude, double longitude) {
+        int lat = (int) Math.round(latitude * 10);
+        int lon = (int) Math.round(-longitude * 10);
+        return lat * 10_000 + Math.floorMod(lon, 10_000);
+    }
+    
+    private static String padding(EndpointProfile profile) {
+        int bytes = profile.getPaddingBytes();
+        return bytes == 0 ? "" : ",\"padding\":\"" + "x".repeat(bytes) + "\"";
+    }
+    
+    private static void sleepNanos(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+    
+    private static Map<String, String> queryParameters(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.putIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder();
+        for (EndpointProfile profile : new EndpointProfile[] {geocoding, weather, news}) {
+            summary.append("\n  ").append(profile);
+        }
+        Map<String, LongAdder> paths = new TreeMap<>(served);
+        failed.forEach(paths::putIfAbsent);
+        for (String path : paths.keySet()) {
+            LongAdder ok = served.get(path);
+            LongAdder errors = failed.get(path);
+            summary.append(String.format("%n  %-18s served=%d failed=%d", path,
+                    ok != null ? ok.sum() : 0, errors != null ? errors.sum() : 0));
+        }
+        return "Mock upstream:" + summary;
+    }
+    
+    /**
+     * Builds a response body from the query parameters
+     */
+    @FunctionalInterface
+    private interface Responder {
+        byte[] respond(Map<String, String> params, String padding);
+    }
+} 
\ No newline at end of file
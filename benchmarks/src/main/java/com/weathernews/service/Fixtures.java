@@ -0,0 +1,34 @@
+package com.weathernews.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Synthetic API payloads shipped with the benchmarks under /fixtures. They follow the
+ * response formats of OpenWeatherMap, its geocoding API and NewsAPI but are generated, not
+ * captured. The news pages mix raw UTF-8 (accents, curly quotes, CJK, emoji) with JSON
+ * unicode escapes, escaped quotes and escaped line breaks so that string decoding costs
+ * roughly what it would on real articles.
+ */
+final class Fixtures {
+    
+    private Fixtures() {
+    }
+    
+    /**
+     * @param name File name below /fixtures, e.g. "news-100.json"
+     * @return The payload as text
+     */
+    static String load(String name) {
+        try (InputStream input = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (input == null) {
+                throw new IllegalArgumentException("Fixture not found: " + name);
+            }
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+} 
\ No newline at end of file
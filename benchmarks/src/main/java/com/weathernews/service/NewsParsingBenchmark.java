@@ -0,0 +1,54 @@
+package com.weathernews.service;
+
+import com.weathernews.model.NewsArticle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of NewsAPI article pages, with and without the article content
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+@State(Scope.Benchmark)
+public class NewsParsingBenchmark {
+    
+    /**
+     * Articles per page; the app asks for 5, the API allows up to 100
+     */
+    @Param({"5", "100"})
+    public int articles;
+    
+    @Param({"false", "true"})
+    public boolean includeContent;
+    
+    private NewsResponseParser parser;
+    private String page;
+    
+    @Setup
+    public void loadFixture() {
+        parser = new NewsResponseParser(includeContent);
+        page = Fixtures.load("news-" + articles + ".json");
+    }
+    
+    @Benchmark
+    public List<NewsArticle> parse() throws IOException {
+        return parser.parse(new StringReader(page));
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,51 @@
+package com.weathernews.service;
+
+import com.weathernews.model.Location;
+import com.weathernews.model.Weather;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of OpenWeatherMap current weather and 20-station group responses
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+@State(Scope.Benchmark)
+public class WeatherParsingBenchmark {
+    private final WeatherResponseDecoder decoder = new WeatherResponseDecoder();
+    private final Location location = new Location("90210", "Beverly Hills", "US", 34.0901, -118.4065);
+    private String current;
+    private String group;
+    
+    @Setup
+    public void loadFixtures() {
+        current = Fixtures.load("weather-current.json");
+        group = Fixtures.load("weather-group.json");
+    }
+    
+    @Benchmark
+    public Weather decodeCurrent() throws IOException {
+        return decoder.decode(new StringReader(current), location);
+    }
+    
+    @Benchmark
+    public Map<Integer, Weather> decodeGroup() throws IOException {
+        return decoder.decodeGroup(new StringReader(group));
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,58 @@
+package com.weathernews.service;
+
+import com.weathernews.http.HttpTransport;
+import com.weathernews.model.Location;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of geocoding responses for zipcode and city lookups
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+@State(Scope.Benchmark)
+public class ZipcodeParsingBenchmark {
+    private HttpTransport transport;
+    private ZipcodeService service;
+    private String zipResponse;
+    private String directResponse;
+    
+    @Setup
+    public void setUp() {
+        // The transport is never used; the parsers only need the service instance
+        transport = new HttpTransport(new Properties());
+        service = new ZipcodeService("benchmark", transport);
+        zipResponse = Fixtures.load("geocoding-zip.json");
+        directResponse = Fixtures.load("geocoding-direct.json");
+    }
+    
+    @TearDown
+    public void tearDown() {
+        transport.close();
+    }
+    
+    @Benchmark
+    public Location parseZipcode() {
+        return service.parseLocationResponse(zipResponse, "90210");
+    }
+    
+    @Benchmark
+    public Location parseCity() {
+        return service.parseDirectLocationResponse(directResponse, "Austin", "TX");
+    }
+} 
\ No newline at end of file
@@ -22,7 +22,7 @@ REM Check if Java is installed
 where java >nul 2>nul
 if %errorlevel% neq 0 (
     echo ❌ Java is not installed or not in PATH
-    echo Please install Java 11 or higher
+    echo Please install Java 21 or higher
     echo.
     pause
     exit /b 1
@@ -1,19 +1,51 @@
 package com.weathernews;
 
+import com.weathernews.batch.BatchProcessor;
+import com.weathernews.cache.StaleWhileRevalidateCache;
+import com.weathernews.cache.WeatherCellCache;
+import com.weathernews.cache.ZipcodeLocationCache;
+import com.weathernews.geo.SpatialIndex;
+import com.weathernews.geo.ZipcodeGazetteer;
+import com.weathernews.history.WeatherHistoryStore;
+import com.weathernews.http.HttpTransport;
+import com.weathernews.http.RequestPriority;
+import com.weathernews.metrics.MetricsRegistry;
+import com.weathernews.metrics.OperationMetrics;
 import com.weathernews.model.Location;
 import com.weathernews.model.NewsArticle;
 import com.weathernews.model.Weather;
+import com.weathernews.model.ZipcodeReport;
+import com.weathernews.persistence.ObservationLog;
+import com.weathernews.prefetch.PopularityTracker;
+import com.weathernews.prefetch.PrefetchScheduler;
+import com.weathernews.server.WeatherNewsServer;
 import com.weathernews.service.NewsService;
 import com.weathernews.service.WeatherService;
+import com.weathernews.service.ZipcodeReportService;
 import com.weathernews.service.ZipcodeService;
+import com.weathernews.util.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main application class for Weather and News App
@@ -21,14 +53,29 @@ import java.util.Scanner;
 public class WeatherNewsApp {
     private static final Logger logger = LoggerFactory.getLogger(WeatherNewsApp.class);
     
+    private final Properties config;
+    private final HttpTransport transport;
+    private final ExecutorService backgroundExecutor;
+    private final MetricsRegistry metrics;
+    private final OperationMetrics processMetrics;
     private final WeatherService weatherService;
     private final NewsService newsService;
     private final ZipcodeService zipcodeService;
+    private final ZipcodeReportService reportService;
+    private final PrefetchScheduler prefetchScheduler;
+    private final ObservationLog observationLog;
     private final Scanner scanner;
     
     public WeatherNewsApp() {
-        // Load configuration
-        Properties config = loadConfiguration();
+        this(loadConfiguration());
+    }
+    
+    /**
+     * Create the application from the given configuration instead of config.properties
+     * @param config Configuration properties
+     */
+    public WeatherNewsApp(Properties config) {
+        this.config = config;
         
         // Get API keys from configuration
         String weatherApiKey = config.getProperty("weather.api.key");
@@ -42,23 +89,187 @@ public class WeatherNewsApp {
             throw new IllegalStateException("News API key not found in configuration. Please set 'news.api.key' in config.properties");
         }
         
-        // Initialize services
-        this.weatherService = new WeatherService(weatherApiKey);
-        this.newsService = new NewsService(newsApiKey);
-        this.zipcodeService = new ZipcodeService(weatherApiKey);
+        // Initialize services on one shared HTTP transport
+        this.transport = new HttpTransport(config);
+        if (Boolean.parseBoolean(config.getProperty("metrics.enabled", "true"))) {
+            this.metrics = new MetricsRegistry(
+                    Boolean.parseBoolean(config.getProperty("metrics.jmx.enabled", "true")));
+            this.processMetrics = metrics.operation("WeatherNewsApp.processZipcode");
+            long logInterval = Long.parseLong(config.getProperty("metrics.log.interval.seconds", "60"));
+            if (logInterval > 0) {
+                metrics.startLogging(logInterval, TimeUnit.SECONDS);
+            }
+        } else {
+            this.metrics = null;
+            this.processMetrics = null;
+        }
+        transport.setMetrics(metrics);
+        this.backgroundExecutor = Executors.newFixedThreadPool(
+                Integer.parseInt(config.getProperty("app.background.threads", "4")),
+                new NamedThreadFactory("background"));
+        this.weatherService = new WeatherService(weatherApiKey, transport);
+        weatherService.setMetrics(metrics);
+        weatherService.setApiUrl(config.getProperty("weather.api.url", "https://api.openweathermap.org/data/2.5"));
+        weatherService.setMaxParallelRequests(
+                Integer.parseInt(config.getProperty("weather.max.parallel.requests", "8")));
+        if (Boolean.parseBoolean(config.getProperty("weather.cache.enabled", "true"))) {
+            weatherService.setCellCache(new WeatherCellCache(
+                    Double.parseDouble(config.getProperty("weather.cache.cell.km", "2.0")),
+                    Long.parseLong(config.getProperty("weather.cache.ttl.minutes", "10")),
+                    TimeUnit.MINUTES,
+                    Integer.parseInt(config.getProperty("weather.cache.max.cells", "5000"))));
+            weatherService.setNearbyFallback(Double.parseDouble(config.getProperty("weather.cache.nearby.km", "0")));
+        }
+        if (Boolean.parseBoolean(config.getProperty("history.enabled", "false"))) {
+            WeatherHistoryStore historyStore = new WeatherHistoryStore(
+                    Integer.parseInt(config.getProperty("history.max.locations", "1000")),
+                    Integer.parseInt(config.getProperty("history.samples.per.location", "1008")),
+                    Long.parseLong(config.getProperty("history.sample.interval.minutes", "10")),
+                    TimeUnit.MINUTES);
+            weatherService.setHistoryStore(historyStore);
+            logger.info("Weather history: {}", historyStore);
+        }
+        this.newsService = new NewsService(newsApiKey, transport);
+        newsService.setMetrics(metrics);
+        newsService.setApiUrl(config.getProperty("news.api.url", "https://newsapi.org/v2"));
+        newsService.setIncludeContent(Boolean.parseBoolean(config.getProperty("news.include.content", "false")));
+        if (Boolean.parseBoolean(config.getProperty("news.incremental.enabled", "false"))) {
+            newsService.setIncrementalPolling(
+                    Integer.parseInt(config.getProperty("news.incremental.window", "100")),
+                    Integer.parseInt(config.getProperty("news.incremental.max.queries", "1000")));
+        }
+        if (Boolean.parseBoolean(config.getProperty("news.speculative.enabled", "false"))) {
+            newsService.setSpeculativeFallback(
+                    Long.parseLong(config.getProperty("news.speculative.delay.ms", "150")), TimeUnit.MILLISECONDS);
+        }
+        if (Boolean.parseBoolean(config.getProperty("news.cache.enabled", "true"))) {
+            newsService.setNewsCache(new StaleWhileRevalidateCache<>(
+                    Long.parseLong(config.getProperty("news.cache.soft.ttl.minutes", "5")),
+                    Long.parseLong(config.getProperty("news.cache.hard.ttl.minutes", "60")),
+                    Long.parseLong(config.getProperty("news.cache.stale.if.error.minutes", "1440")),
+                    TimeUnit.MINUTES,
+                    Integer.parseInt(config.getProperty("news.cache.max.entries", "1000")),
+                    // Background refreshes are speculative work and yield to user requests
+                    task -> backgroundExecutor.execute(RequestPriority.wrap(RequestPriority.PREFETCH, task))));
+        }
+        this.zipcodeService = new ZipcodeService(weatherApiKey, transport);
+        zipcodeService.setMetrics(metrics);
+        zipcodeService.setApiUrl(config.getProperty("geocoding.api.url", "https://api.openweathermap.org/geo/1.0"));
+        if (Boolean.parseBoolean(config.getProperty("zipcode.cache.enabled", "true"))) {
+            zipcodeService.setLocationCache(new ZipcodeLocationCache(
+                    Integer.parseInt(config.getProperty("zipcode.cache.max.entries", "10000")),
+                    Long.parseLong(config.getProperty("zipcode.cache.ttl.hours", "24")),
+                    TimeUnit.HOURS));
+        }
+        if (Boolean.parseBoolean(config.getProperty("zipcode.index.enabled", "true"))) {
+            zipcodeService.setLocationIndex(new SpatialIndex<>(
+                    Double.parseDouble(config.getProperty("zipcode.index.cell.km", "10"))));
+        }
+        String gazetteerPath = config.getProperty("zipcode.gazetteer.path", "").trim();
+        if (!gazetteerPath.isEmpty()) {
+            try {
+                zipcodeService.setGazetteer(ZipcodeGazetteer.open(Paths.get(gazetteerPath)),
+                        Boolean.parseBoolean(config.getProperty("zipcode.gazetteer.offline.only", "false")));
+            } catch (IOException e) {
+                logger.warn("Zipcode gazetteer {} could not be loaded, using the geocoding API", gazetteerPath, e);
+            }
+        }
+        this.observationLog = Boolean.parseBoolean(config.getProperty("observations.log.enabled", "false"))
+                ? openObservationLog()
+                : null;
+        this.reportService = new ZipcodeReportService(zipcodeService, weatherService, newsService,
+                Integer.parseInt(config.getProperty("news.max.articles", "5")));
+        if (Boolean.parseBoolean(config.getProperty("prefetch.enabled", "false"))) {
+            PopularityTracker tracker = new PopularityTracker(
+                    Integer.parseInt(config.getProperty("prefetch.sketch.width", "4096")),
+                    Integer.parseInt(config.getProperty("prefetch.top.n", "50")));
+            zipcodeService.setPopularityTracker(tracker);
+            this.prefetchScheduler = new PrefetchScheduler(tracker, zipcodeService, weatherService, newsService,
+                    Integer.parseInt(config.getProperty("news.max.articles", "5")));
+            prefetchScheduler.start(
+                    Long.parseLong(config.getProperty("prefetch.interval.seconds", "30")),
+                    Long.parseLong(config.getProperty("prefetch.lead.seconds", "60")),
+                    TimeUnit.SECONDS);
+        } else {
+            this.prefetchScheduler = null;
+        }
         this.scanner = new Scanner(System.in);
         
         logger.info("Weather and News App initialized successfully");
     }
     
     /**
-     * Load configuration from properties file
+     * Open the observation log, persist every fetch into it and restore the weather history
+     * from it. The application keeps running without persistence if the log cannot be opened.
+     * @return The log, or null if it could not be opened
+     */
+    private ObservationLog openObservationLog() {
+        String directory = config.getProperty("observations.log.dir", "data/observations");
+        long segmentMb = Long.parseLong(config.getProperty("observations.log.segment.mb", "64"));
+        if (segmentMb < 1 || segmentMb * 1024 * 1024 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("observations.log.segment.mb must be between 1 and 2047: "
+                    + "segments are memory-mapped, which limits them to 2 GB");
+        }
+        ObservationLog log;
+        try {
+            log = new ObservationLog(Paths.get(directory), (int) (segmentMb * 1024 * 1024),
+                    Integer.parseInt(config.getProperty("observations.log.max.segments", "0")));
+        } catch (IOException e) {
+            logger.warn("Observation log {} could not be opened, fetched data will not be persisted", directory, e);
+            return null;
+        }
+        log.start(Long.parseLong(config.getProperty("observations.log.commit.interval.ms", "200")),
+                TimeUnit.MILLISECONDS,
+                Integer.parseInt(config.getProperty("observations.log.commit.batch.records", "1000")));
+        
+        WeatherHistoryStore historyStore = weatherService.getHistoryStore();
+        if (historyStore != null) {
+            // Replay as much weather as the history keeps
+            long window = TimeUnit.MINUTES.toMillis(
+                    Long.parseLong(config.getProperty("history.sample.interval.minutes", "10"))
+                    * Integer.parseInt(config.getProperty("history.samples.per.location", "1008")));
+            try {
+                // The history is kept per 5-digit zipcode; weather logged under a city name is skipped
+                long replayed = log.replay(System.currentTimeMillis() - window, Long.MAX_VALUE, entry -> {
+                    String zipcode = entry.getKind() == ObservationLog.Kind.WEATHER
+                            ? ZipcodeService.toCanonicalZipcode(entry.getKey()) : null;
+                    if (zipcode != null) {
+                        historyStore.record(zipcode, entry.getTimestamp(), entry.getWeather());
+                    }
+                });
+                logger.info("Replayed {} logged observations into the weather history", replayed);
+            } catch (IOException e) {
+                logger.warn("Could not replay the observation log into the weather history", e);
+            }
+        }
+        weatherService.setObservationLog(log);
+        newsService.setObservationLog(log);
+        zipcodeService.setObservationLog(log);
+        return log;
+    }
+    
+    /**
+     * @return The zipcode report pipeline behind every mode
+     */
+    public ZipcodeReportService getReportService() {
+        return reportService;
+    }
+    
+    /**
+     * @return The metrics registry, or null if metrics are disabled
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Load configuration from the config.properties resource
      * @return Properties object with configuration
      */
-    private Properties loadConfiguration() {
+    public static Properties loadConfiguration() {
         Properties config = new Properties();
         
-        try (InputStream input = getClass().getClassLoader().getResourceAsStream("config.properties")) {
+        try (InputStream input = WeatherNewsApp.class.getClassLoader().getResourceAsStream("config.properties")) {
             if (input == null) {
                 logger.warn("config.properties not found, using default configuration");
                 return config;
@@ -110,6 +321,70 @@ public class WeatherNewsApp {
         }
     }
     
+    /**
+     * Batch mode: process a file of zipcodes and write one NDJSON record per zipcode
+     * @param options Command line options: "batch" (input file or "-" for stdin), and optionally
+     *                "out" (output file or "-" for stdout), "parallelism" and "rate" (zipcodes/s)
+     * @throws IOException if reading the input or writing the output fails
+     */
+    public void runBatch(Map<String, String> options) throws IOException {
+        String inputPath = options.get("batch");
+        String outputPath = options.getOrDefault("out", "-");
+        int parallelism = Integer.parseInt(options.getOrDefault("parallelism",
+                config.getProperty("batch.parallelism", "16")));
+        double rate = Double.parseDouble(options.getOrDefault("rate",
+                config.getProperty("batch.rate.per.second", "10")));
+        
+        BufferedReader input = "-".equals(inputPath)
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(inputPath), StandardCharsets.UTF_8);
+        Writer output = "-".equals(outputPath)
+                ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16)
+                : Files.newBufferedWriter(Paths.get(outputPath), StandardCharsets.UTF_8);
+        
+        logger.info("Starting batch from {} (parallelism={}, rate={}/s)", inputPath, parallelism, rate);
+        try {
+            BatchProcessor processor = new BatchProcessor(reportService, parallelism, rate);
+            BatchProcessor.BatchStats stats = processor.process(input, output);
+            System.err.println(stats);
+        } finally {
+            input.close();
+            if ("-".equals(outputPath)) {
+                output.flush();
+            } else {
+                output.close();
+            }
+        }
+    }
+    
+    /**
+     * Server mode: serve /location, /weather and /news until the JVM is shut down
+     * @param options Command line options: "server" (port to listen on)
+     * @throws IOException if the server cannot be started
+     * @throws InterruptedException if the main thread is interrupted while serving
+     */
+    public void runServer(Map<String, String> options) throws IOException, InterruptedException {
+        int port = Integer.parseInt(options.getOrDefault("server", config.getProperty("server.port", "8080")));
+        WeatherNewsServer server = new WeatherNewsServer(zipcodeService, weatherService, newsService,
+                Integer.parseInt(config.getProperty("news.max.articles", "5")));
+        server.start(port);
+        System.out.println("Serving /location, /weather and /news on port " + server.getPort() + " (Ctrl+C to stop)");
+        
+        // Stop on shutdown and give the main thread time to run cleanup()
+        CountDownLatch stopped = new CountDownLatch(1);
+        Thread mainThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            stopped.countDown();
+            try {
+                mainThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "server-shutdown"));
+        stopped.await();
+    }
+    
     /**
      * Process a zipcode and display weather and news information
      * @param zipcode The zipcode to process
@@ -119,20 +394,23 @@ public class WeatherNewsApp {
         System.out.println("Processing zipcode: " + zipcode);
         System.out.println("=".repeat(60));
         
+        long started = System.nanoTime();
         try {
-            // Get location information
-            System.out.println("📍 Looking up location...");
-            Location location = zipcodeService.getLocationByZipcode(zipcode);
+            // Geocode once, then fetch weather and news concurrently
+            System.out.println("📍 Looking up location, weather and news...");
+            ZipcodeReport report = reportService.getReport(zipcode);
+            Location location = report.getLocation();
             System.out.println("   Location: " + location);
             
-            // Get weather information
-            System.out.println("\n🌤️  Fetching weather information...");
-            Weather weather = weatherService.getWeatherByZipcode(zipcode);
+            // Weather information
+            System.out.println("\n🌤️  Weather information:");
+            Weather weather = report.getWeather();
             System.out.println(weather);
+            printTemperatureHistory(location);
             
-            // Get news information
-            System.out.println("\n📰 Fetching local news...");
-            List<NewsArticle> articles = newsService.getLocalNews(location, 5);
+            // News information
+            System.out.println("\n📰 Local news:");
+            List<NewsArticle> articles = report.getArticles();
             
             if (articles.isEmpty()) {
                 System.out.println("   No local news found for this area.");
@@ -157,20 +435,53 @@ public class WeatherNewsApp {
                     System.out.println();
                 }
             }
+            if (processMetrics != null) {
+                processMetrics.recordSuccess(System.nanoTime() - started);
+            }
             
         } catch (IOException e) {
+            recordProcessFailure(started, e);
             logger.error("API request failed for zipcode: " + zipcode, e);
             System.out.println("❌ Failed to fetch data: " + e.getMessage());
             System.out.println("Please check your internet connection and API keys.");
         } catch (IllegalArgumentException e) {
+            recordProcessFailure(started, e);
             logger.warn("Invalid zipcode: " + zipcode, e);
             System.out.println("❌ " + e.getMessage());
         } catch (Exception e) {
+            recordProcessFailure(started, e);
             logger.error("Unexpected error processing zipcode: " + zipcode, e);
             System.out.println("❌ An unexpected error occurred: " + e.getMessage());
         }
     }
     
+    /**
+     * Print the range of temperatures seen for the location over the last day, if history is kept
+     * @param location The location
+     */
+    private void printTemperatureHistory(Location location) {
+        WeatherHistoryStore historyStore = weatherService.getHistoryStore();
+        if (historyStore == null) {
+            return;
+        }
+        String zipcode = ZipcodeService.toCanonicalZipcode(location.getZipcode());
+        if (zipcode == null) {
+            return;
+        }
+        WeatherHistoryStore.Summary summary = historyStore.rolling(zipcode,
+                WeatherHistoryStore.Field.TEMPERATURE, 24, TimeUnit.HOURS);
+        if (summary.getCount() > 1) {
+            System.out.printf("  Last 24h: %.1f°F to %.1f°F, average %.1f°F (%d observations)%n",
+                    summary.getMin(), summary.getMax(), summary.getMean(), summary.getCount());
+        }
+    }
+    
+    private void recordProcessFailure(long started, Exception e) {
+        if (processMetrics != null) {
+            processMetrics.recordFailure(System.nanoTime() - started, e);
+        }
+    }
+    
     /**
      * Print welcome message
      */
@@ -195,21 +506,79 @@ public class WeatherNewsApp {
      * Clean up resources
      */
     public void cleanup() {
+        if (prefetchScheduler != null) {
+            logger.info("Prefetch stats: {}", prefetchScheduler);
+            prefetchScheduler.close();
+        }
+        if (reportService != null) {
+            reportService.close();
+        }
         if (weatherService != null) {
+            if (weatherService.getHistoryStore() != null) {
+                logger.info("Weather history stats: {}", weatherService.getHistoryStore());
+            }
+            WeatherCellCache cellCache = weatherService.getCellCache();
+            if (cellCache != null) {
+                logger.info("Weather cache stats: {}", cellCache);
+                for (WeatherCellCache.CellStats cell : cellCache.getBusiestCells(5)) {
+                    logger.info("  {}", cell);
+                }
+            }
             weatherService.close();
         }
         if (newsService != null) {
+            if (newsService.getNewsCache() != null) {
+                logger.info("News cache stats: {}", newsService.getNewsCache());
+            }
+            if (newsService.getIncrementalStats() != null) {
+                logger.info("Incremental news stats: {}", newsService.getIncrementalStats());
+            }
             newsService.close();
         }
         if (zipcodeService != null) {
+            if (zipcodeService.getLocationCache() != null) {
+                logger.info("Zipcode cache stats: {}", zipcodeService.getLocationCache());
+            }
             zipcodeService.close();
         }
+        if (backgroundExecutor != null) {
+            backgroundExecutor.shutdownNow();
+        }
+        if (observationLog != null) {
+            observationLog.close();
+            logger.info("Observation log stats: {}", observationLog);
+        }
+        if (transport != null) {
+            logger.info("HTTP transport stats: {}", transport);
+            transport.close();
+        }
+        if (metrics != null) {
+            metrics.logSummary();
+            metrics.close();
+        }
         if (scanner != null) {
             scanner.close();
         }
         logger.info("Application resources cleaned up");
     }
     
+    /**
+     * Parse "--name value" command line options
+     * @param args Command line arguments
+     * @return Option values keyed by name without the leading dashes
+     */
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Usage: WeatherNewsApp [--batch <file|-> [--out <file|->] "
+                        + "[--parallelism <n>] [--rate <zipcodes per second>]] [--server <port>]");
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+    
     /**
      * Main method
      * @param args Command line arguments
@@ -218,8 +587,15 @@ public class WeatherNewsApp {
         WeatherNewsApp app = null;
         
         try {
+            Map<String, String> options = parseOptions(args);
             app = new WeatherNewsApp();
-            app.run();
+            if (options.containsKey("batch")) {
+                app.runBatch(options);
+            } else if (options.containsKey("server")) {
+                app.runServer(options);
+            } else {
+                app.run();
+            }
         } catch (Exception e) {
             logger.error("Application failed to start", e);
             System.err.println("Failed to start application: " + e.getMessage());
@@ -0,0 +1,285 @@
+package com.weathernews.batch;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.weathernews.http.RequestPriority;
+import com.weathernews.model.ZipcodeReport;
+import com.weathernews.service.ZipcodeReportService;
+import com.weathernews.service.ZipcodeService;
+import com.weathernews.util.JsonSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-interactive batch mode: reads zipcodes (one per line), skips duplicates and
+ * processes them with bounded parallelism and a start-rate budget, streaming one
+ * NDJSON record per zipcode as it completes. Upstream requests run at
+ * {@link RequestPriority#BATCH}, so interactive lookups are served first.
+ */
+public class BatchProcessor {
+    private static final Logger logger = LoggerFactory.getLogger(BatchProcessor.class);
+    
+    private final ZipcodeReportService reportService;
+    private final int parallelism;
+    private final double zipcodesPerSecond;
+    private final Gson gson = JsonSupport.createGson();
+    
+    /**
+     * @param reportService Pipeline used to build each report
+     * @param parallelism Maximum number of zipcodes in flight
+     * @param zipcodesPerSecond Maximum zipcodes started per second, or 0 for no limit
+     */
+    public BatchProcessor(ZipcodeReportService reportService, int parallelism, double zipcodesPerSecond) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.reportService = reportService;
+        this.parallelism = parallelism;
+        this.zipcodesPerSecond = zipcodesPerSecond;
+    }
+    
+    /**
+     * Process every zipcode from the input and write NDJSON records to the output
+     * @param input Zipcodes, one per line; blank lines and lines starting with '#' are ignored
+     * @param output Destination for the NDJSON records; flushed but not closed
+     * @return Statistics for the run
+     * @throws IOException if reading the input or writing the output fails
+     */
+    public BatchStats process(BufferedReader input, Writer output) throws IOException {
+        RequestPriority previous = RequestPriority.set(RequestPriority.BATCH);
+        try {
+            return processAll(input, output);
+        } finally {
+            RequestPriority.set(previous);
+        }
+    }
+    
+    private BatchStats processAll(BufferedReader input, Writer output) throws IOException {
+        BatchStats stats = new BatchStats();
+        Semaphore slots = new Semaphore(parallelism);
+        BitSet seen = new BitSet(100_000);
+        long intervalNanos = zipcodesPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / zipcodesPerSecond) : 0;
+        long nextStart = System.nanoTime();
+        AtomicInteger outputErrors = new AtomicInteger();
+        
+        String line;
+        while ((line = input.readLine()) != null) {
+            String zipcode = line.trim();
+            if (zipcode.isEmpty() || zipcode.startsWith("#")) {
+                continue;
+            }
+            
+            int zipKey;
+            try {
+                zipKey = ZipcodeService.toZipKey(zipcode);
+            } catch (IllegalArgumentException e) {
+                stats.recordInvalid();
+                write(output, errorRecord(zipcode, e.getMessage()), outputErrors);
+                continue;
+            }
+            if (seen.get(zipKey)) {
+                stats.recordDuplicate();
+                continue;
+            }
+            seen.set(zipKey);
+            
+            // Pace starts to stay within the upstream rate budget
+            if (intervalNanos > 0) {
+                long wait = nextStart - System.nanoTime();
+                if (wait > 0) {
+                    sleep(wait);
+                }
+                nextStart = Math.max(nextStart, System.nanoTime() - intervalNanos) + intervalNanos;
+            }
+            
+            acquire(slots, 1);
+            long started = System.nanoTime();
+            reportService.getReportAsync(zipcode).whenComplete((report, error) -> {
+                try {
+                    long latency = System.nanoTime() - started;
+                    if (error == null) {
+                        stats.recordSuccess(latency);
+                        write(output, reportRecord(report, latency), outputErrors);
+                    } else {
+                        Throwable cause = ZipcodeReportService.failureCause(error);
+                        stats.recordFailure(latency);
+                        write(output, errorRecord(zipcode, cause.getMessage()), outputErrors);
+                    }
+                } finally {
+                    slots.release();
+                }
+            });
+        }
+        
+        // Wait for the remaining in-flight zipcodes
+        acquire(slots, parallelism);
+        slots.release(parallelism);
+        stats.finish();
+        
+        synchronized (output) {
+            output.flush();
+        }
+        if (outputErrors.get() > 0) {
+            throw new IOException("Failed to write " + outputErrors.get() + " batch records");
+        }
+        return stats;
+    }
+    
+    private JsonObject reportRecord(ZipcodeReport report, long latencyNanos) {
+        JsonObject record = new JsonObject();
+        record.addProperty("zipcode", report.getZipcode());
+        record.add("location", gson.toJsonTree(report.getLocation()));
+        record.add("weather", gson.toJsonTree(report.getWeather()));
+        record.add("articles", gson.toJsonTree(report.getArticles()));
+        record.addProperty("latencyMs", TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+        return record;
+    }
+    
+    private JsonObject errorRecord(String zipcode, String message) {
+        JsonObject record = new JsonObject();
+        record.addProperty("zipcode", zipcode);
+        record.addProperty("error", message != null ? message : "Unknown error");
+        return record;
+    }
+    
+    private void write(Writer output, JsonObject record, AtomicInteger outputErrors) {
+        String json = gson.toJson(record);
+        synchronized (output) {
+            try {
+                output.write(json);
+                output.write('\n');
+            } catch (IOException e) {
+                if (outputErrors.getAndIncrement() == 0) {
+                    logger.error("Failed to write batch output", e);
+                }
+            }
+        }
+    }
+    
+    private static void acquire(Semaphore slots, int permits) throws InterruptedIOException {
+        try {
+            slots.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch interrupted");
+        }
+    }
+    
+    private static void sleep(long nanos) throws InterruptedIOException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch interrupted");
+        }
+    }
+    
+    /**
+     * Throughput and latency statistics for a batch run
+     */
+    public static class BatchStats {
+        private final long startedAt = System.nanoTime();
+        private long finishedAt;
+        private int succeeded;
+        private int failed;
+        private int invalid;
+        private int duplicates;
+        private long[] latencies = new long[1024];
+        private int latencyCount;
+        
+        synchronized void recordSuccess(long latencyNanos) {
+            succeeded++;
+            recordLatency(latencyNanos);
+        }
+        
+        synchronized void recordFailure(long latencyNanos) {
+            failed++;
+            recordLatency(latencyNanos);
+        }
+        
+        synchronized void recordInvalid() {
+            invalid++;
+        }
+        
+        synchronized void recordDuplicate() {
+            duplicates++;
+        }
+        
+        synchronized void finish() {
+            finishedAt = System.nanoTime();
+            Arrays.sort(latencies, 0, latencyCount);
+        }
+        
+        private void recordLatency(long latencyNanos) {
+            if (latencyCount == latencies.length) {
+                latencies = Arrays.copyOf(latencies, latencies.length * 2);
+            }
+            latencies[latencyCount++] = latencyNanos;
+        }
+        
+        public synchronized int getSucceeded() {
+            return succeeded;
+        }
+        
+        public synchronized int getFailed() {
+            return failed;
+        }
+        
+        public synchronized int getInvalid() {
+            return invalid;
+        }
+        
+        public synchronized int getDuplicates() {
+            return duplicates;
+        }
+        
+        /**
+         * @return Elapsed wall-clock time of the run in seconds
+         */
+        public synchronized double getElapsedSeconds() {
+            long end = finishedAt != 0 ? finishedAt : System.nanoTime();
+            return (end - startedAt) / 1e9;
+        }
+        
+        /**
+         * @return Processed zipcodes per second
+         */
+        public synchronized double getThroughput() {
+            double elapsed = getElapsedSeconds();
+            return elapsed > 0 ? (succeeded + failed) / elapsed : 0.0;
+        }
+        
+        /**
+         * @param percentile Percentile between 0 and 100
+         * @return Latency at the percentile in milliseconds (valid after the run finished)
+         */
+        public synchronized double getLatencyMillis(double percentile) {
+            if (latencyCount == 0) {
+                return 0.0;
+            }
+            int index = (int) Math.ceil(percentile / 100.0 * latencyCount) - 1;
+            return latencies[Math.max(0, Math.min(index, latencyCount - 1))] / 1e6;
+        }
+        
+        @Override
+        public synchronized String toString() {
+            return String.format(
+                "Batch complete in %.1fs: %d succeeded, %d failed, %d invalid, %d duplicates skipped\n" +
+                "  Throughput: %.1f zipcodes/s\n" +
+                "  Latency: p50=%.0fms p90=%.0fms p99=%.0fms max=%.0fms",
+                getElapsedSeconds(), succeeded, failed, invalid, duplicates, getThroughput(),
+                getLatencyMillis(50), getLatencyMillis(90), getLatencyMillis(99), getLatencyMillis(100)
+            );
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.weathernews.cache;
+
+import java.util.Arrays;
+
+/**
+ * Eviction policy shared by the bounded TTL caches. When a cache is full it drops its expired
+ * entries and then the oldest eighth of the rest in one pass, so the cost of that pass is
+ * spread over the following maxEntries / 8 inserts instead of being paid on each of them.
+ * Entries of one cache share a TTL, so the earliest expiry belongs to the oldest entry and the
+ * expiry alone decides what goes.
+ */
+final class BatchEviction {
+    
+    private BatchEviction() {
+    }
+    
+    /**
+     * Find the expiry at or before which entries are evicted
+     * @param liveExpiries Expiries of the entries that have not expired yet; sorted in place
+     * @param live Number of expiries in the array
+     * @param maxEntries Capacity of the cache
+     * @param now Current System.nanoTime()
+     * @return Evict every entry whose expiry minus the cutoff is not positive; at least now,
+     *         so expired entries always go
+     */
+    static long expiryCutoff(long[] liveExpiries, int live, int maxEntries, long now) {
+        int target = maxEntries - Math.max(1, maxEntries / 8);
+        if (live <= target) {
+            return now;
+        }
+        Arrays.sort(liveExpiries, 0, live);
+        return liveExpiries[live - target - 1];
+    }
+} 
\ No newline at end of file
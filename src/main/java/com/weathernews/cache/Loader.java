@@ -0,0 +1,16 @@
+package com.weathernews.cache;
+
+import java.io.IOException;
+
+/**
+ * Loads a value from an upstream source on a cache miss
+ * @param <V> Type of the loaded value
+ */
+@FunctionalInterface
+public interface Loader<V> {
+    /**
+     * @return The loaded value
+     * @throws IOException if the upstream request fails
+     */
+    V load() throws IOException;
+} 
\ No newline at end of file
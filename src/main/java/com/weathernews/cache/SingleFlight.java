@@ -0,0 +1,91 @@
+package com.weathernews.cache;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces concurrent loads of the same key into one upstream call.
+ * The first caller for a key runs the loader; callers arriving while it is in
+ * flight wait on the same future and receive its result or failure.
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public class SingleFlight<K, V> {
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    
+    /**
+     * Load a value, sharing an already in-flight load for the same key
+     * @param key Key identifying the upstream request
+     * @param loader Loads the value when no load is in flight
+     * @return The loaded value
+     * @throws IOException if the shared load fails
+     */
+    public V execute(K key, Loader<V> loader) throws IOException {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.increment();
+            return await(existing);
+        }
+        
+        loads.increment();
+        try {
+            V value = loader.load();
+            future.complete(value);
+            return value;
+        } catch (IOException | RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+    
+    /**
+     * @return Number of loads that actually ran
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+    
+    /**
+     * @return Number of callers that joined an in-flight load instead of issuing their own
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+    
+    private V await(CompletableFuture<V> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for in-flight request");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("SingleFlight[loads=%d, coalesced=%d, inFlight=%d]",
+                getLoadCount(), getCoalescedCount(), inFlight.size());
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,258 @@
+package com.weathernews.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache that serves entries past their soft TTL immediately while refreshing them
+ * in the background, and only blocks callers once an entry passes its hard TTL.
+ * A failed background refresh keeps serving the stale value until the hard TTL.
+ * <p>
+ * Past the hard TTL an entry is only kept for {@link #getStale} during a stale-if-error
+ * window, e.g. to answer while the upstream is down; with a zero window it is dropped at the
+ * hard TTL. Dead entries are removed when read and by a sweep run from {@link #put} at most
+ * once per soft TTL. When the cache is full, entries past their hard TTL and the oldest
+ * eighth of the rest are evicted in one batch.
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public class StaleWhileRevalidateCache<K, V> {
+    private static final Logger logger = LoggerFactory.getLogger(StaleWhileRevalidateCache.class);
+    
+    private final long softTtlNanos;
+    private final long hardTtlNanos;
+    private final long staleIfErrorNanos;
+    private final int maxEntries;
+    private final Executor refreshExecutor;
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+    
+    private final LongAdder freshHits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshFailures = new LongAdder();
+    
+    /**
+     * Create a cache that drops entries at their hard TTL
+     * @param softTtl Age after which an entry is refreshed in the background
+     * @param hardTtl Age after which an entry is no longer served
+     * @param unit Unit of both TTLs
+     * @param maxEntries Maximum number of keys to keep
+     * @param refreshExecutor Executor running background refreshes
+     */
+    public StaleWhileRevalidateCache(long softTtl, long hardTtl, TimeUnit unit, int maxEntries,
+                                     Executor refreshExecutor) {
+        this(softTtl, hardTtl, 0, unit, maxEntries, refreshExecutor);
+    }
+    
+    /**
+     * @param softTtl Age after which an entry is refreshed in the background
+     * @param hardTtl Age after which an entry is no longer served by {@link #get}
+     * @param staleIfError Time past the hard TTL during which {@link #getStale} still returns
+     *                     an entry before it is dropped
+     * @param unit Unit of the TTLs
+     * @param maxEntries Maximum number of keys to keep
+     * @param refreshExecutor Executor running background refreshes
+     */
+    public StaleWhileRevalidateCache(long softTtl, long hardTtl, long staleIfError, TimeUnit unit, int maxEntries,
+                                     Executor refreshExecutor) {
+        if (hardTtl < softTtl) {
+            throw new IllegalArgumentException("Hard TTL must not be shorter than soft TTL");
+        }
+        if (staleIfError < 0) {
+            throw new IllegalArgumentException("Stale-if-error window must not be negative");
+        }
+        this.softTtlNanos = unit.toNanos(softTtl);
+        this.hardTtlNanos = unit.toNanos(hardTtl);
+        this.staleIfErrorNanos = unit.toNanos(staleIfError);
+        this.maxEntries = maxEntries;
+        this.refreshExecutor = refreshExecutor;
+    }
+    
+    /**
+     * Get a value, loading it on a miss and refreshing it in the background when stale
+     * @param key Cache key
+     * @param loader Loads the value from upstream
+     * @return The cached or freshly loaded value
+     * @throws IOException if the value is not cached and loading fails
+     */
+    public V get(K key, Loader<V> loader) throws IOException {
+        long now = System.nanoTime();
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.hardExpiresAt - now > 0) {
+            if (entry.softExpiresAt - now > 0) {
+                freshHits.increment();
+            } else {
+                staleHits.increment();
+                refreshInBackground(key, entry, loader);
+            }
+            return entry.value;
+        }
+        
+        removeIfDead(key, entry, now);
+        misses.increment();
+        V value = loader.load();
+        put(key, value);
+        return value;
+    }
+    
+    /**
+     * Get a value only if it is cached and within its hard TTL, without loading or refreshing
+     * @param key Cache key
+     * @return The cached value, or null
+     */
+    public V getIfPresent(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && entry.hardExpiresAt - System.nanoTime() > 0) {
+            return entry.value;
+        }
+        return null;
+    }
+    
+    /**
+     * Get a value even if it is past its hard TTL, e.g. while the upstream is unavailable,
+     * as long as it is within the stale-if-error window
+     * @param key Cache key
+     * @return The cached value, or null
+     */
+    public V getStale(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null || removeIfDead(key, entry, System.nanoTime())) {
+            return null;
+        }
+        return entry.value;
+    }
+    
+    /**
+     * Check whether a key needs loading soon, e.g. to refresh it ahead of time
+     * @param key Cache key
+     * @param withinNanos How far ahead to look
+     * @return True if the key is absent or turns stale within the given time
+     */
+    public boolean isExpiring(K key, long withinNanos) {
+        Entry<V> entry = entries.get(key);
+        return entry == null || entry.softExpiresAt - System.nanoTime() <= withinNanos;
+    }
+    
+    /**
+     * Store a value, resetting its soft and hard TTL
+     * @param key Cache key
+     * @param value Value to store
+     */
+    public void put(K key, V value) {
+        long now = System.nanoTime();
+        long sweepAt = nextSweep.get();
+        if (now - sweepAt >= 0 && nextSweep.compareAndSet(sweepAt, now + softTtlNanos)) {
+            entries.entrySet().removeIf(candidate -> candidate.getValue().deadAt - now <= 0);
+        }
+        if (!entries.containsKey(key) && entries.size() >= maxEntries) {
+            evict(now);
+        }
+        long hardExpiresAt = now + hardTtlNanos;
+        entries.put(key, new Entry<>(value, now + softTtlNanos, hardExpiresAt, hardExpiresAt + staleIfErrorNanos));
+    }
+    
+    public int size() {
+        return entries.size();
+    }
+    
+    public long getFreshHitCount() {
+        return freshHits.sum();
+    }
+    
+    public long getStaleHitCount() {
+        return staleHits.sum();
+    }
+    
+    public long getMissCount() {
+        return misses.sum();
+    }
+    
+    public long getRefreshFailureCount() {
+        return refreshFailures.sum();
+    }
+    
+    private void refreshInBackground(K key, Entry<V> entry, Loader<V> loader) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    put(key, loader.load());
+                } catch (IOException | RuntimeException e) {
+                    refreshFailures.increment();
+                    entry.refreshing.set(false);
+                    logger.warn("Background refresh failed for {}: {}", key, e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.refreshing.set(false);
+            logger.debug("Background refresh rejected for {}", key);
+        }
+    }
+    
+    /**
+     * Remove an entry that is past its stale-if-error window
+     * @return True if the entry is dead
+     */
+    private boolean removeIfDead(K key, Entry<V> entry, long now) {
+        if (entry.deadAt - now > 0) {
+            return false;
+        }
+        entries.remove(key, entry);
+        return true;
+    }
+    
+    /**
+     * Evict a batch of entries by hard TTL (see {@link BatchEviction})
+     * @param now Current System.nanoTime()
+     */
+    private synchronized void evict(long now) {
+        // Concurrent writers queue here; the first one may already have made room
+        if (entries.size() < maxEntries) {
+            return;
+        }
+        long[] liveExpiries = new long[entries.size()];
+        int live = 0;
+        for (Entry<V> entry : entries.values()) {
+            if (entry.hardExpiresAt - now > 0 && live < liveExpiries.length) {
+                liveExpiries[live++] = entry.hardExpiresAt;
+            }
+        }
+        long cutoff = BatchEviction.expiryCutoff(liveExpiries, live, maxEntries, now);
+        entries.values().removeIf(entry -> entry.hardExpiresAt - cutoff <= 0);
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("StaleWhileRevalidateCache[size=%d/%d, fresh=%d, stale=%d, misses=%d, refreshFailures=%d]",
+                entries.size(), maxEntries, getFreshHitCount(), getStaleHitCount(), getMissCount(),
+                getRefreshFailureCount());
+    }
+    
+    private static class Entry<V> {
+        final V value;
+        final long softExpiresAt;
+        final long hardExpiresAt;
+        final long deadAt;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+        
+        Entry(V value, long softExpiresAt, long hardExpiresAt, long deadAt) {
+            this.value = value;
+            this.softExpiresAt = softExpiresAt;
+            this.hardExpiresAt = hardExpiresAt;
+            this.deadAt = deadAt;
+        }
+    }
+} 
\ No newline at end of file
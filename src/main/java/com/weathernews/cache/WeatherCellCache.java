@@ -0,0 +1,292 @@
+package com.weathernews.cache;
+
+import com.weathernews.geo.SpatialIndex;
+import com.weathernews.model.Location;
+import com.weathernews.model.Weather;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Weather cache keyed by a grid cell of the location's coordinates.
+ * Nearby zipcodes that fall into the same cell share one upstream observation
+ * per TTL window. Cells are roughly square: rows are a fixed number of degrees
+ * of latitude, and each row's longitude width is widened by 1/cos(latitude).
+ * Observations are also indexed by the coordinates they were fetched for, so a
+ * location whose own cell is empty can be served from a fresh neighbouring cell.
+ */
+public class WeatherCellCache {
+    private static final double KM_PER_DEGREE = 111.32;
+    
+    private final double cellDegrees;
+    private final long ttlNanos;
+    private final int maxCells;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Long, CellStats> stats = new ConcurrentHashMap<>();
+    private final SpatialIndex<Long, Entry> observations;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder nearbyHits = new LongAdder();
+    
+    /**
+     * @param cellSizeKm Edge length of a cell in kilometres
+     * @param ttl Time-to-live of a cached observation
+     * @param unit Unit of the ttl
+     * @param maxCells Maximum number of cells to keep
+     */
+    public WeatherCellCache(double cellSizeKm, long ttl, TimeUnit unit, int maxCells) {
+        if (cellSizeKm <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive");
+        }
+        this.cellDegrees = cellSizeKm / KM_PER_DEGREE;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.maxCells = maxCells;
+        this.observations = new SpatialIndex<>(cellSizeKm);
+    }
+    
+    /**
+     * Compute the grid cell containing a coordinate
+     * @param latitude Latitude in degrees
+     * @param longitude Longitude in degrees
+     * @return Cell id packing the row and column
+     */
+    public long cellOf(double latitude, double longitude) {
+        int row = (int) Math.floor((latitude + 90.0) / cellDegrees);
+        double rowCenter = -90.0 + (row + 0.5) * cellDegrees;
+        double lonDegrees = cellDegrees / Math.max(Math.cos(Math.toRadians(rowCenter)), 0.01);
+        int column = (int) Math.floor((longitude + 180.0) / lonDegrees);
+        return (long) row << 32 | (column & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * Look up the cached observation for the location's cell
+     * @param location The location
+     * @return Cached weather shared by the whole cell, or null on a miss
+     */
+    public Weather get(Location location) {
+        long cell = cellOf(location.getLatitude(), location.getLongitude());
+        CellStats cellStats = statsFor(cell);
+        Entry entry = entries.get(cell);
+        if (entry != null && entry.expiresAt - System.nanoTime() > 0) {
+            hits.increment();
+            cellStats.hits.increment();
+            return entry.weather;
+        }
+        misses.increment();
+        cellStats.misses.increment();
+        return null;
+    }
+    
+    /**
+     * Look up the observation for the location's cell regardless of its age, e.g. while the
+     * weather API is unavailable. Not counted as a hit or miss.
+     * @param location The location
+     * @return The last observation for the cell, even if expired, or null if absent
+     */
+    public Weather getStale(Location location) {
+        Entry entry = entries.get(cellOf(location.getLatitude(), location.getLongitude()));
+        return entry != null ? entry.weather : null;
+    }
+    
+    /**
+     * Find the nearest fresh observation fetched within a distance of the location, e.g. from a
+     * neighbouring cell when the location's own cell has none. Counted as a nearby hit only.
+     * @param location The location
+     * @param maxKm Maximum distance between the location and the observation's coordinates
+     * @return The nearest fresh observation, or null if there is none within maxKm
+     */
+    public Weather getNearby(Location location, double maxKm) {
+        long now = System.nanoTime();
+        SpatialIndex.Match<Long, Entry> match = observations.nearest(location.getLatitude(), location.getLongitude(),
+                maxKm, entry -> entry.expiresAt - now > 0);
+        if (match == null) {
+            return null;
+        }
+        nearbyHits.increment();
+        return match.getValue().weather;
+    }
+    
+    /**
+     * Check whether the location's cell needs fetching soon, e.g. to refresh it ahead of time.
+     * Not counted as a hit or miss.
+     * @param location The location
+     * @param withinNanos How far ahead to look
+     * @return True if the cell has no observation or it expires within the given time
+     */
+    public boolean isExpiring(Location location, long withinNanos) {
+        Entry entry = entries.get(cellOf(location.getLatitude(), location.getLongitude()));
+        return entry == null || entry.expiresAt - System.nanoTime() <= withinNanos;
+    }
+    
+    /**
+     * Cache an observation for the location's cell
+     * @param location The location the weather was fetched for
+     * @param weather The observation
+     */
+    public void put(Location location, Weather weather) {
+        long now = System.nanoTime();
+        long cell = cellOf(location.getLatitude(), location.getLongitude());
+        if (!entries.containsKey(cell) && entries.size() >= maxCells) {
+            evict(now);
+        }
+        Entry entry = new Entry(weather, now + ttlNanos);
+        entries.put(cell, entry);
+        observations.put(cell, location.getLatitude(), location.getLongitude(), entry);
+    }
+    
+    /**
+     * @param cell Cell id from {@link #cellOf(double, double)}
+     * @return Hit/miss counters for the cell, or null if it was never requested
+     */
+    public CellStats getCellStats(long cell) {
+        return stats.get(cell);
+    }
+    
+    /**
+     * @param limit Maximum number of cells to return
+     * @return The most requested cells, busiest first
+     */
+    public List<CellStats> getBusiestCells(int limit) {
+        List<CellStats> cells = new ArrayList<>(stats.values());
+        cells.sort(Comparator.comparingLong(CellStats::getRequestCount).reversed());
+        return cells.subList(0, Math.min(limit, cells.size()));
+    }
+    
+    public int size() {
+        return entries.size();
+    }
+    
+    public long getHitCount() {
+        return hits.sum();
+    }
+    
+    public long getMissCount() {
+        return misses.sum();
+    }
+    
+    /**
+     * @return Misses served by {@link #getNearby} from a neighbouring observation
+     */
+    public long getNearbyHitCount() {
+        return nearbyHits.sum();
+    }
+    
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+    
+    public double getCellSizeKm() {
+        return cellDegrees * KM_PER_DEGREE;
+    }
+    
+    private CellStats statsFor(long cell) {
+        CellStats cellStats = stats.get(cell);
+        if (cellStats == null) {
+            // Keep the stats table bounded; drop cells that are no longer cached
+            if (stats.size() >= maxCells * 4) {
+                stats.keySet().removeIf(id -> !entries.containsKey(id));
+            }
+            cellStats = stats.computeIfAbsent(cell, id -> new CellStats(id, (int) (id >> 32)));
+        }
+        return cellStats;
+    }
+    
+    /**
+     * Evict a batch of cells (see {@link BatchEviction})
+     * @param now Current System.nanoTime()
+     */
+    private synchronized void evict(long now) {
+        // Concurrent writers queue here; the first one may already have made room
+        if (entries.size() < maxCells) {
+            return;
+        }
+        long[] liveExpiries = new long[entries.size()];
+        int live = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.expiresAt - now > 0 && live < liveExpiries.length) {
+                liveExpiries[live++] = entry.expiresAt;
+            }
+        }
+        long cutoff = BatchEviction.expiryCutoff(liveExpiries, live, maxCells, now);
+        entries.entrySet().removeIf(candidate -> {
+            if (candidate.getValue().expiresAt - cutoff > 0) {
+                return false;
+            }
+            observations.remove(candidate.getKey(), candidate.getValue());
+            return true;
+        });
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("WeatherCellCache[cells=%d/%d, cellSize=%.2fkm, hits=%d, misses=%d, hitRate=%.1f%%, nearbyHits=%d]",
+                entries.size(), maxCells, getCellSizeKm(), getHitCount(), getMissCount(), getHitRate() * 100,
+                getNearbyHitCount());
+    }
+    
+    private static class Entry {
+        final Weather weather;
+        final long expiresAt;
+        
+        Entry(Weather weather, long expiresAt) {
+            this.weather = weather;
+            this.expiresAt = expiresAt;
+        }
+    }
+    
+    /**
+     * Request counters for a single grid cell
+     */
+    public class CellStats {
+        private final long cell;
+        private final int row;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        
+        CellStats(long cell, int row) {
+            this.cell = cell;
+            this.row = row;
+        }
+        
+        public long getCell() {
+            return cell;
+        }
+        
+        /**
+         * @return Latitude of the centre of the cell's row
+         */
+        public double getCenterLatitude() {
+            return -90.0 + (row + 0.5) * cellDegrees;
+        }
+        
+        public long getHitCount() {
+            return hits.sum();
+        }
+        
+        public long getMissCount() {
+            return misses.sum();
+        }
+        
+        public long getRequestCount() {
+            return hits.sum() + misses.sum();
+        }
+        
+        public double getHitRate() {
+            long total = getRequestCount();
+            return total == 0 ? 0.0 : (double) getHitCount() / total;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("cell %d/%d (lat %.3f): %d requests, hitRate=%.1f%%",
+                    row, (int) cell, getCenterLatitude(), getRequestCount(), getHitRate() * 100);
+        }
+    }
+} 
\ No newline at end of file
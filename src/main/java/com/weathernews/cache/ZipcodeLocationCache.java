@@ -0,0 +1,201 @@
+package com.weathernews.cache;
+
+import com.weathernews.model.Location;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded TTL cache of zipcode to Location resolutions.
+ * Zipcodes are packed into primitive int keys (the 5-digit prefix) and stored in an
+ * open-addressing table with linear probing, so lookups never box the key.
+ * When the cache is full, expired entries are purged and the oldest entries are
+ * evicted in one batch to amortize the cost of rebuilding the table.
+ */
+public class ZipcodeLocationCache {
+    private static final int EMPTY = -1;
+    
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final int mask;
+    
+    private int[] keys;
+    private Location[] values;
+    private long[] expiresAt;
+    private int size;
+    
+    private long hits;
+    private long misses;
+    private long evictions;
+    
+    /**
+     * @param maxEntries Maximum number of zipcodes to keep
+     * @param ttl Time-to-live for each entry
+     * @param unit Unit of the ttl
+     */
+    public ZipcodeLocationCache(int maxEntries, long ttl, TimeUnit unit) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = unit.toNanos(ttl);
+        
+        // Keep the load factor at or below 0.5 so probe chains stay short
+        int capacity = Integer.highestOneBit(Math.max(2, maxEntries) * 2 - 1) << 1;
+        this.mask = capacity - 1;
+        this.keys = new int[capacity];
+        this.values = new Location[capacity];
+        this.expiresAt = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+    
+    /**
+     * Look up a cached location
+     * @param zipKey The packed 5-digit zipcode
+     * @return The cached location, or null if absent or expired
+     */
+    public synchronized Location get(int zipKey) {
+        int slot = find(zipKey);
+        if (slot >= 0 && expiresAt[slot] - System.nanoTime() > 0) {
+            hits++;
+            return values[slot];
+        }
+        misses++;
+        return null;
+    }
+    
+    /**
+     * Look up a location regardless of its age, e.g. while the geocoding API is unavailable.
+     * Not counted as a hit or miss.
+     * @param zipKey The packed 5-digit zipcode
+     * @return The cached location, even if expired, or null if absent
+     */
+    public synchronized Location getStale(int zipKey) {
+        int slot = find(zipKey);
+        return slot >= 0 ? values[slot] : null;
+    }
+    
+    /**
+     * Cache a resolved location
+     * @param zipKey The packed 5-digit zipcode
+     * @param location The resolved location
+     */
+    public synchronized void put(int zipKey, Location location) {
+        if (zipKey < 0) {
+            throw new IllegalArgumentException("Invalid zipcode key: " + zipKey);
+        }
+        long now = System.nanoTime();
+        int slot = find(zipKey);
+        if (slot < 0) {
+            if (size >= maxEntries) {
+                evict(now);
+            }
+            slot = insertSlot(zipKey);
+            keys[slot] = zipKey;
+            size++;
+        }
+        values[slot] = location;
+        expiresAt[slot] = now + ttlNanos;
+    }
+    
+    /**
+     * Remove all entries; counters are kept
+     */
+    public synchronized void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+    
+    public synchronized int size() {
+        return size;
+    }
+    
+    public synchronized long getHitCount() {
+        return hits;
+    }
+    
+    public synchronized long getMissCount() {
+        return misses;
+    }
+    
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+    
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+    
+    private int find(int zipKey) {
+        int slot = hash(zipKey);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == zipKey) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+    
+    private int insertSlot(int zipKey) {
+        int slot = hash(zipKey);
+        while (keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+    
+    private int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+    
+    /**
+     * Evict a batch of entries (see {@link BatchEviction}) and rebuild the table
+     * @param now Current System.nanoTime()
+     */
+    private void evict(long now) {
+        int live = 0;
+        long[] liveExpiries = new long[size];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY && expiresAt[i] - now > 0) {
+                liveExpiries[live++] = expiresAt[i];
+            }
+        }
+        long cutoff = BatchEviction.expiryCutoff(liveExpiries, live, maxEntries, now);
+        
+        int[] oldKeys = keys;
+        Location[] oldValues = values;
+        long[] oldExpiresAt = expiresAt;
+        keys = new int[oldKeys.length];
+        values = new Location[oldValues.length];
+        expiresAt = new long[oldExpiresAt.length];
+        Arrays.fill(keys, EMPTY);
+        
+        int kept = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) {
+                continue;
+            }
+            long expiry = oldExpiresAt[i];
+            if (expiry - cutoff <= 0) {
+                continue;
+            }
+            int slot = insertSlot(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+            expiresAt[slot] = expiry;
+            kept++;
+        }
+        evictions += size - kept;
+        size = kept;
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return String.format("ZipcodeLocationCache[size=%d/%d, hits=%d, misses=%d, hitRate=%.1f%%, evictions=%d]",
+                size, maxEntries, hits, misses, getHitRate() * 100, evictions);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,217 @@
+package com.weathernews.geo;
+
+import com.weathernews.service.ZipcodeService;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Command-line tool that converts a zipcode CSV into the binary table read by
+ * {@link ZipcodeGazetteer}.
+ *
+ * The CSV must have a header row with the columns zip, city, state, lat and lon
+ * (in any order; other columns are ignored). Fields may be double-quoted.
+ *
+ * Usage: GazetteerBuilder &lt;input.csv&gt; &lt;output.gaz&gt;
+ */
+public class GazetteerBuilder {
+    
+    private final Map<String, Integer> cityIndex = new LinkedHashMap<>();
+    private final Map<String, Integer> stateIndex = new LinkedHashMap<>();
+    private final TreeMap<Integer, float[]> coordinates = new TreeMap<>();
+    private final Map<Integer, Integer> packedNames = new LinkedHashMap<>();
+    
+    /**
+     * Add one zipcode to the table; later rows replace earlier ones for the same zipcode
+     * @param zipcode The 5-digit zipcode
+     * @param city City name
+     * @param state State abbreviation
+     * @param latitude Latitude in degrees
+     * @param longitude Longitude in degrees
+     */
+    public void add(String zipcode, String city, String state, double latitude, double longitude) {
+        int zipKey = ZipcodeService.toZipKey(zipcode);
+        int cityId = cityIndex.computeIfAbsent(city, name -> cityIndex.size());
+        int stateId = stateIndex.computeIfAbsent(state, name -> stateIndex.size());
+        if (cityId >= (1 << 24) || stateId > 0xFF) {
+            throw new IllegalStateException("Too many distinct cities or states for the table format");
+        }
+        coordinates.put(zipKey, new float[] {(float) latitude, (float) longitude});
+        packedNames.put(zipKey, cityId << 8 | stateId);
+    }
+    
+    /**
+     * Read zipcodes from a CSV file
+     * @param csv Path to the CSV
+     * @throws IOException if the file cannot be read
+     */
+    public void addCsv(Path csv) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IOException("Empty CSV: " + csv);
+            }
+            List<String> columns = splitCsvLine(header);
+            int zipColumn = column(columns, "zip");
+            int cityColumn = column(columns, "city");
+            int stateColumn = column(columns, "state");
+            int latColumn = column(columns, "lat");
+            int lonColumn = column(columns, "lon");
+            
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                List<String> fields = splitCsvLine(line);
+                try {
+                    add(fields.get(zipColumn), fields.get(cityColumn), fields.get(stateColumn),
+                            Double.parseDouble(fields.get(latColumn)), Double.parseDouble(fields.get(lonColumn)));
+                } catch (RuntimeException e) {
+                    throw new IOException("Invalid row at line " + lineNumber + ": " + line, e);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Write the binary table
+     * @param output Destination stream
+     * @throws IOException if writing fails
+     */
+    public void write(OutputStream output) throws IOException {
+        List<byte[]> cityBytes = encode(cityIndex);
+        List<byte[]> stateBytes = encode(stateIndex);
+        
+        int recordsOffset = ZipcodeGazetteer.HEADER_SIZE;
+        int cityOffsetsOffset = recordsOffset + coordinates.size() * ZipcodeGazetteer.RECORD_SIZE;
+        int stateOffsetsOffset = cityOffsetsOffset + (cityBytes.size() + 1) * 4;
+        int stringsOffset = stateOffsetsOffset + (stateBytes.size() + 1) * 4;
+        
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+        out.writeInt(ZipcodeGazetteer.MAGIC);
+        out.writeInt(ZipcodeGazetteer.VERSION);
+        out.writeInt(coordinates.size());
+        out.writeInt(cityBytes.size());
+        out.writeInt(stateBytes.size());
+        out.writeInt(recordsOffset);
+        out.writeInt(cityOffsetsOffset);
+        out.writeInt(stateOffsetsOffset);
+        out.writeInt(stringsOffset);
+        
+        for (Map.Entry<Integer, float[]> entry : coordinates.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeFloat(entry.getValue()[0]);
+            out.writeFloat(entry.getValue()[1]);
+            out.writeInt(packedNames.get(entry.getKey()));
+        }
+        
+        // City strings come first in the blob, state strings follow
+        int offset = 0;
+        for (byte[] bytes : cityBytes) {
+            out.writeInt(offset);
+            offset += bytes.length;
+        }
+        out.writeInt(offset);
+        for (byte[] bytes : stateBytes) {
+            out.writeInt(offset);
+            offset += bytes.length;
+        }
+        out.writeInt(offset);
+        
+        for (byte[] bytes : cityBytes) {
+            out.write(bytes);
+        }
+        for (byte[] bytes : stateBytes) {
+            out.write(bytes);
+        }
+        out.flush();
+    }
+    
+    public int size() {
+        return coordinates.size();
+    }
+    
+    private static List<byte[]> encode(Map<String, Integer> dictionary) {
+        List<byte[]> encoded = new ArrayList<>(dictionary.size());
+        for (String value : dictionary.keySet()) {
+            encoded.add(value.getBytes(StandardCharsets.UTF_8));
+        }
+        return encoded;
+    }
+    
+    private static int column(List<String> columns, String name) throws IOException {
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).trim().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        throw new IOException("CSV header is missing column: " + name);
+    }
+    
+    static List<String> splitCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+    
+    /**
+     * Main method
+     * @param args Input CSV path and output table path
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: GazetteerBuilder <input.csv> <output.gaz>");
+            System.exit(1);
+        }
+        
+        Path input = Paths.get(args[0]);
+        Path output = Paths.get(args[1]);
+        GazetteerBuilder builder = new GazetteerBuilder();
+        builder.addCsv(input);
+        
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        try (OutputStream out = Files.newOutputStream(output)) {
+            builder.write(out);
+        }
+        System.out.println("Wrote " + builder.size() + " zipcodes to " + output);
+    }
+} 
\ No newline at end of file
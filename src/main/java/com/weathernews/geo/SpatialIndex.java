@@ -0,0 +1,272 @@
+package com.weathernews.geo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Points on the globe indexed by a fixed geohash-style grid, for nearest-neighbour and radius
+ * queries. Cells are a fixed number of degrees on each side; a query only visits the cells
+ * overlapping the bounding box of its search radius, so its cost depends on the radius and
+ * the local density, not on how many points are indexed.
+ *
+ * Each point has a key; putting an existing key moves the point. Lookups are lock-free and
+ * may run concurrently with updates. Searches do not wrap around the antimeridian.
+ *
+ * @param <K> Key type, e.g. a zipcode
+ * @param <V> Value type
+ */
+public class SpatialIndex<K, V> {
+    private static final double KM_PER_DEGREE = 111.32;
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    
+    private final double cellDegrees;
+    private final double cellSizeKm;
+    private final Map<K, Point<K, V>> points = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Point<K, V>>> cells = new ConcurrentHashMap<>();
+    
+    /**
+     * @param cellSizeKm Edge length of a grid cell at the equator; around the typical search
+     *                   radius works best
+     */
+    public SpatialIndex(double cellSizeKm) {
+        if (cellSizeKm <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive");
+        }
+        this.cellSizeKm = cellSizeKm;
+        this.cellDegrees = cellSizeKm / KM_PER_DEGREE;
+    }
+    
+    /**
+     * Add a point, or move and update the point with the same key
+     * @param key The key
+     * @param latitude Latitude in degrees
+     * @param longitude Longitude in degrees
+     * @param value The value
+     */
+    public synchronized void put(K key, double latitude, double longitude, V value) {
+        Point<K, V> point = new Point<>(key, latitude, longitude, value);
+        Point<K, V> previous = points.put(key, point);
+        if (previous != null) {
+            removeFromCell(previous);
+        }
+        cells.computeIfAbsent(cellOf(latitude, longitude), cell -> ConcurrentHashMap.newKeySet()).add(point);
+    }
+    
+    /**
+     * @param key The key
+     * @return The removed value, or null if the key was not indexed
+     */
+    public synchronized V remove(K key) {
+        Point<K, V> previous = points.remove(key);
+        if (previous == null) {
+            return null;
+        }
+        removeFromCell(previous);
+        return previous.value;
+    }
+    
+    /**
+     * Remove the point with the given key only if it still holds the given value
+     * @return True if removed
+     */
+    public synchronized boolean remove(K key, V value) {
+        Point<K, V> current = points.get(key);
+        if (current == null || current.value != value) {
+            return false;
+        }
+        points.remove(key);
+        removeFromCell(current);
+        return true;
+    }
+    
+    /**
+     * Find the nearest point accepted by a filter. The search starts with the cells around the
+     * coordinate and doubles its radius until a match is found or the maximum is reached.
+     * @param latitude Latitude in degrees
+     * @param longitude Longitude in degrees
+     * @param maxKm Maximum distance
+     * @param filter Accepts the values that may be returned, e.g. only fresh ones
+     * @return The nearest accepted point, or null if none is within maxKm
+     */
+    public Match<K, V> nearest(double latitude, double longitude, double maxKm, Predicate<V> filter) {
+        double radius = Math.min(cellSizeKm, maxKm);
+        while (true) {
+            Match<K, V> best = null;
+            for (Point<K, V> point : candidates(latitude, longitude, radius)) {
+                double distance = distanceKm(latitude, longitude, point.latitude, point.longitude);
+                if (distance <= radius && (best == null || distance < best.distanceKm) && filter.test(point.value)) {
+                    best = new Match<>(point, distance);
+                }
+            }
+            // Any closer point lies within the searched radius, so the best match is final
+            if (best != null || radius >= maxKm) {
+                return best;
+            }
+            radius = Math.min(radius * 2, maxKm);
+        }
+    }
+    
+    /**
+     * @param latitude Latitude in degrees
+     * @param longitude Longitude in degrees
+     * @param radiusKm Search radius
+     * @return All points within the radius, nearest first
+     */
+    public List<Match<K, V>> within(double latitude, double longitude, double radiusKm) {
+        List<Match<K, V>> matches = new ArrayList<>();
+        for (Point<K, V> point : candidates(latitude, longitude, radiusKm)) {
+            double distance = distanceKm(latitude, longitude, point.latitude, point.longitude);
+            if (distance <= radiusKm) {
+                matches.add(new Match<>(point, distance));
+            }
+        }
+        matches.sort(Comparator.comparingDouble(Match::getDistanceKm));
+        return matches;
+    }
+    
+    /**
+     * @param key The key
+     * @return The value of the point, or null if the key is not indexed
+     */
+    public V get(K key) {
+        Point<K, V> point = points.get(key);
+        return point != null ? point.value : null;
+    }
+    
+    public int size() {
+        return points.size();
+    }
+    
+    /**
+     * Great-circle distance between two coordinates (haversine formula)
+     * @return Distance in kilometres
+     */
+    public static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double dLat = Math.toRadians(latitude2 - latitude1);
+        double dLon = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+    
+    /**
+     * Points in the cells overlapping the bounding box of a circle
+     */
+    private List<Point<K, V>> candidates(double latitude, double longitude, double radiusKm) {
+        double dLat = radiusKm / KM_PER_DEGREE;
+        // Longitude degrees shrink towards the poles; size the box for the widest latitude in it
+        double widestLatitude = Math.min(Math.abs(latitude) + dLat, 89.0);
+        double dLon = Math.min(radiusKm / (KM_PER_DEGREE * Math.cos(Math.toRadians(widestLatitude))), 180.0);
+        int minRow = row(latitude - dLat);
+        int maxRow = row(latitude + dLat);
+        int minColumn = column(longitude - dLon);
+        int maxColumn = column(longitude + dLon);
+        
+        List<Point<K, V>> candidates = new ArrayList<>();
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                Set<Point<K, V>> cell = cells.get(cellId(row, column));
+                if (cell != null) {
+                    candidates.addAll(cell);
+                }
+            }
+        }
+        return candidates;
+    }
+    
+    private void removeFromCell(Point<K, V> point) {
+        long cell = cellOf(point.latitude, point.longitude);
+        Set<Point<K, V>> members = cells.get(cell);
+        if (members != null) {
+            members.remove(point);
+            if (members.isEmpty()) {
+                cells.remove(cell, members);
+            }
+        }
+    }
+    
+    private long cellOf(double latitude, double longitude) {
+        return cellId(row(latitude), column(longitude));
+    }
+    
+    private int row(double latitude) {
+        return (int) Math.floor((latitude + 90.0) / cellDegrees);
+    }
+    
+    private int column(double longitude) {
+        return (int) Math.floor((longitude + 180.0) / cellDegrees);
+    }
+    
+    private static long cellId(int row, int column) {
+        return (long) row << 32 | (column & 0xFFFFFFFFL);
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("SpatialIndex[points=%d, cells=%d, cellSize=%.1fkm]", points.size(), cells.size(), cellSizeKm);
+    }
+    
+    private static class Point<K, V> {
+        final K key;
+        final double latitude;
+        final double longitude;
+        final V value;
+        
+        Point(K key, double latitude, double longitude, V value) {
+            this.key = key;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.value = value;
+        }
+    }
+    
+    /**
+     * A point found by a query and its distance from the query coordinate
+     */
+    public static class Match<K, V> {
+        private final K key;
+        private final double latitude;
+        private final double longitude;
+        private final V value;
+        private final double distanceKm;
+        
+        Match(Point<K, V> point, double distanceKm) {
+            this.key = point.key;
+            this.latitude = point.latitude;
+            this.longitude = point.longitude;
+            this.value = point.value;
+            this.distanceKm = distanceKm;
+        }
+        
+        public K getKey() {
+            return key;
+        }
+        
+        public double getLatitude() {
+            return latitude;
+        }
+        
+        public double getLongitude() {
+            return longitude;
+        }
+        
+        public V getValue() {
+            return value;
+        }
+        
+        public double getDistanceKm() {
+            return distanceKm;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%s (%.2fkm)", key, distanceKm);
+        }
+    }
+} 
\ No newline at end of file
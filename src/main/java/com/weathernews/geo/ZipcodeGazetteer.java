@@ -0,0 +1,154 @@
+package com.weathernews.geo;
+
+import com.weathernews.model.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Offline US zipcode gazetteer backed by a memory-mapped binary table.
+ *
+ * File layout (big-endian):
+ * <pre>
+ * header   magic, version, recordCount, cityCount, stateCount,
+ *          recordsOffset, cityOffsetsOffset, stateOffsetsOffset, stringsOffset
+ * records  recordCount x 16 bytes sorted by zip: int zip, float lat, float lon,
+ *          int (cityIndex &lt;&lt; 8 | stateIndex)
+ * strings  (count + 1) int offsets per dictionary into a shared UTF-8 blob
+ * </pre>
+ * Lookups binary-search the mapped records directly; the small city and state
+ * dictionaries are decoded once when the table is opened, so resolving a zipcode
+ * allocates nothing beyond the returned Location.
+ */
+public class ZipcodeGazetteer {
+    private static final Logger logger = LoggerFactory.getLogger(ZipcodeGazetteer.class);
+    
+    static final int MAGIC = 0x5A474154; // "ZGAT"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 36;
+    static final int RECORD_SIZE = 16;
+    
+    private final ByteBuffer records;
+    private final int recordCount;
+    private final String[] cities;
+    private final String[] states;
+    
+    private ZipcodeGazetteer(ByteBuffer buffer) {
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a zipcode gazetteer table");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported gazetteer version: " + buffer.getInt(4));
+        }
+        this.recordCount = buffer.getInt(8);
+        int cityCount = buffer.getInt(12);
+        int stateCount = buffer.getInt(16);
+        int recordsOffset = buffer.getInt(20);
+        int cityOffsetsOffset = buffer.getInt(24);
+        int stateOffsetsOffset = buffer.getInt(28);
+        int stringsOffset = buffer.getInt(32);
+        
+        this.records = buffer.duplicate().position(recordsOffset)
+                .limit(recordsOffset + recordCount * RECORD_SIZE).slice();
+        this.cities = readDictionary(buffer, cityOffsetsOffset, cityCount, stringsOffset);
+        this.states = readDictionary(buffer, stateOffsetsOffset, stateCount, stringsOffset);
+    }
+    
+    /**
+     * Memory-map a gazetteer table produced by {@link GazetteerBuilder}
+     * @param path Path to the binary table
+     * @return Opened gazetteer
+     * @throws IOException if the file cannot be read
+     */
+    public static ZipcodeGazetteer open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ZipcodeGazetteer gazetteer = new ZipcodeGazetteer(buffer);
+            logger.info("Loaded zipcode gazetteer {} ({} zipcodes, {} cities)",
+                    path, gazetteer.size(), gazetteer.cities.length);
+            return gazetteer;
+        }
+    }
+    
+    /**
+     * Find the record index of a zipcode
+     * @param zipKey The packed 5-digit zipcode
+     * @return Record index, or -1 if the zipcode is not in the table
+     */
+    public int indexOf(int zipKey) {
+        int low = 0;
+        int high = recordCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int zip = records.getInt(mid * RECORD_SIZE);
+            if (zip < zipKey) {
+                low = mid + 1;
+            } else if (zip > zipKey) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+    
+    public int zipKey(int index) {
+        return records.getInt(index * RECORD_SIZE);
+    }
+    
+    public double latitude(int index) {
+        return records.getFloat(index * RECORD_SIZE + 4);
+    }
+    
+    public double longitude(int index) {
+        return records.getFloat(index * RECORD_SIZE + 8);
+    }
+    
+    public String city(int index) {
+        return cities[records.getInt(index * RECORD_SIZE + 12) >>> 8];
+    }
+    
+    public String state(int index) {
+        return states[records.getInt(index * RECORD_SIZE + 12) & 0xFF];
+    }
+    
+    /**
+     * Resolve a zipcode to a Location
+     * @param zipKey The packed 5-digit zipcode
+     * @param zipcode The zipcode string to report on the Location
+     * @return Location, or null if the zipcode is not in the table
+     */
+    public Location lookup(int zipKey, String zipcode) {
+        int index = indexOf(zipKey);
+        if (index < 0) {
+            return null;
+        }
+        return new Location(zipcode, city(index), state(index), latitude(index), longitude(index));
+    }
+    
+    /**
+     * @return Number of zipcodes in the table
+     */
+    public int size() {
+        return recordCount;
+    }
+    
+    private static String[] readDictionary(ByteBuffer buffer, int offsetsOffset, int count, int stringsOffset) {
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            int start = buffer.getInt(offsetsOffset + i * 4);
+            int end = buffer.getInt(offsetsOffset + (i + 1) * 4);
+            byte[] bytes = new byte[end - start];
+            buffer.duplicate().position(stringsOffset + start).get(bytes);
+            values[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return values;
+    }
+} 
\ No newline at end of file
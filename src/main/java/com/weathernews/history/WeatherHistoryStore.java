@@ -0,0 +1,415 @@
+package com.weathernews.history;
+
+import com.weathernews.model.Weather;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recent weather observations per zipcode, kept as primitive columns in off-heap memory.
+ * Each zipcode owns a fixed ring of samples in every column (time, temperature, feels-like,
+ * humidity, pressure, wind speed and direction, visibility), so a sample costs
+ * {@value #BYTES_PER_SAMPLE} bytes instead of a {@link Weather} object and the history adds
+ * nothing to the heap or to garbage collection work. The newest sample overwrites the oldest
+ * once a ring is full.
+ *
+ * A sample arriving less than the sample interval after a zipcode's newest one is skipped,
+ * so repeated lookups served from the cache do not crowd out older history. When all rings
+ * are taken, the least recently used zipcode's ring is reused.
+ *
+ * All columns are allocated up front: maxLocations × samplesPerLocation × {@value #BYTES_PER_SAMPLE}
+ * bytes of direct memory, which must fit within -XX:MaxDirectMemorySize.
+ */
+public class WeatherHistoryStore {
+    /**
+     * Bytes per sample across all columns
+     */
+    public static final int BYTES_PER_SAMPLE = 27;
+    
+    /**
+     * Observation values that can be summarized
+     */
+    public enum Field { TEMPERATURE, FEELS_LIKE, HUMIDITY, PRESSURE, WIND_SPEED, WIND_DIRECTION, VISIBILITY }
+    
+    private final int maxLocations;
+    private final int samplesPerLocation;
+    private final long sampleIntervalMillis;
+    
+    // Columns, indexed by slot * samplesPerLocation + ring position
+    private final ByteBuffer times;          // int, epoch seconds (unsigned)
+    private final ByteBuffer temperatures;   // float
+    private final ByteBuffer feelsLike;      // float
+    private final ByteBuffer humidities;     // byte, percent
+    private final ByteBuffer pressures;      // float
+    private final ByteBuffer windSpeeds;     // float
+    private final ByteBuffer windDirections; // short, degrees
+    private final ByteBuffer visibilities;   // int, meters
+    
+    // Ring state per slot: next write position and number of samples
+    private final int[] heads;
+    private final int[] counts;
+    private final Map<String, Integer> slots = new LinkedHashMap<>(16, 0.75f, true);
+    private int nextSlot;
+    private long recorded;
+    private long skipped;
+    private long evictedLocations;
+    
+    /**
+     * @param maxLocations Zipcodes kept at once
+     * @param samplesPerLocation Samples kept per zipcode, e.g. 1008 for a week of 10-minute samples
+     * @param sampleInterval Minimum time between two samples of a zipcode
+     * @param unit Unit of sampleInterval
+     */
+    public WeatherHistoryStore(int maxLocations, int samplesPerLocation, long sampleInterval, TimeUnit unit) {
+        if (maxLocations <= 0 || samplesPerLocation <= 0 || sampleInterval < 0) {
+            throw new IllegalArgumentException("Location and sample counts must be positive and the interval non-negative");
+        }
+        int capacity;
+        try {
+            capacity = Math.multiplyExact(maxLocations, samplesPerLocation);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("History store too large: " + maxLocations + " x " + samplesPerLocation);
+        }
+        this.maxLocations = maxLocations;
+        this.samplesPerLocation = samplesPerLocation;
+        this.sampleIntervalMillis = unit.toMillis(sampleInterval);
+        this.times = column(capacity, Integer.BYTES);
+        this.temperatures = column(capacity, Float.BYTES);
+        this.feelsLike = column(capacity, Float.BYTES);
+        this.humidities = column(capacity, Byte.BYTES);
+        this.pressures = column(capacity, Float.BYTES);
+        this.windSpeeds = column(capacity, Float.BYTES);
+        this.windDirections = column(capacity, Short.BYTES);
+        this.visibilities = column(capacity, Integer.BYTES);
+        this.heads = new int[maxLocations];
+        this.counts = new int[maxLocations];
+    }
+    
+    /**
+     * Add an observation to a zipcode's history
+     * @param zipcode The zipcode
+     * @param timestampMillis Time of the observation, in epoch milliseconds
+     * @param weather The observation
+     * @return True if stored, false if it was within the sample interval of the newest sample
+     *         or older than it
+     */
+    public synchronized boolean record(String zipcode, long timestampMillis, Weather weather) {
+        if (zipcode == null || weather == null) {
+            throw new IllegalArgumentException("Zipcode and weather cannot be null");
+        }
+        Integer slot = slots.get(zipcode);
+        if (slot == null) {
+            slot = allocateSlot(zipcode);
+        } else if (counts[slot] > 0
+                && timestampMillis - timeAt(physical(slot, counts[slot] - 1)) < sampleIntervalMillis) {
+            skipped++;
+            return false;
+        }
+        
+        int index = slot * samplesPerLocation + heads[slot];
+        times.putInt(index * Integer.BYTES, (int) (timestampMillis / 1000));
+        temperatures.putFloat(index * Float.BYTES, (float) weather.getTemperature());
+        feelsLike.putFloat(index * Float.BYTES, (float) weather.getFeelsLike());
+        humidities.put(index, (byte) weather.getHumidity());
+        pressures.putFloat(index * Float.BYTES, (float) weather.getPressure());
+        windSpeeds.putFloat(index * Float.BYTES, (float) weather.getWindSpeed());
+        windDirections.putShort(index * Short.BYTES, (short) weather.getWindDirection());
+        visibilities.putInt(index * Integer.BYTES, weather.getVisibility());
+        
+        heads[slot] = (heads[slot] + 1) % samplesPerLocation;
+        if (counts[slot] < samplesPerLocation) {
+            counts[slot]++;
+        }
+        recorded++;
+        return true;
+    }
+    
+    /**
+     * @param zipcode The zipcode
+     * @param fromMillis Start of the range, inclusive, in epoch milliseconds
+     * @param toMillis End of the range, inclusive, in epoch milliseconds
+     * @return The zipcode's samples within the range, oldest first
+     */
+    public synchronized List<Sample> range(String zipcode, long fromMillis, long toMillis) {
+        Integer slot = slots.get(zipcode);
+        if (slot == null) {
+            return Collections.emptyList();
+        }
+        List<Sample> samples = new ArrayList<>();
+        for (int i = firstAtOrAfter(slot, fromMillis); i < counts[slot]; i++) {
+            int index = physical(slot, i);
+            long time = timeAt(index);
+            if (time > toMillis) {
+                break;
+            }
+            samples.add(new Sample(time,
+                    temperatures.getFloat(index * Float.BYTES),
+                    feelsLike.getFloat(index * Float.BYTES),
+                    humidities.get(index),
+                    pressures.getFloat(index * Float.BYTES),
+                    windSpeeds.getFloat(index * Float.BYTES),
+                    windDirections.getShort(index * Short.BYTES),
+                    visibilities.getInt(index * Integer.BYTES)));
+        }
+        return samples;
+    }
+    
+    /**
+     * Minimum, maximum and average of one value over a time range, computed on the columns
+     * without materializing samples
+     * @param zipcode The zipcode
+     * @param field The value to summarize
+     * @param fromMillis Start of the range, inclusive, in epoch milliseconds
+     * @param toMillis End of the range, inclusive, in epoch milliseconds
+     * @return The summary; its count is 0 if there are no samples in the range
+     */
+    public synchronized Summary summarize(String zipcode, Field field, long fromMillis, long toMillis) {
+        Integer slot = slots.get(zipcode);
+        if (slot == null) {
+            return new Summary(field, 0, Double.NaN, Double.NaN, Double.NaN);
+        }
+        int count = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double sum = 0;
+        for (int i = firstAtOrAfter(slot, fromMillis); i < counts[slot]; i++) {
+            int index = physical(slot, i);
+            if (timeAt(index) > toMillis) {
+                break;
+            }
+            double value = valueAt(field, index);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            count++;
+        }
+        return count == 0
+                ? new Summary(field, 0, Double.NaN, Double.NaN, Double.NaN)
+                : new Summary(field, count, min, max, sum / count);
+    }
+    
+    /**
+     * Summarize one value over the window ending at the zipcode's newest sample
+     * @param zipcode The zipcode
+     * @param field The value to summarize
+     * @param window Length of the window
+     * @param unit Unit of window
+     * @return The summary; its count is 0 if the zipcode has no history
+     */
+    public synchronized Summary rolling(String zipcode, Field field, long window, TimeUnit unit) {
+        Integer slot = slots.get(zipcode);
+        if (slot == null || counts[slot] == 0) {
+            return new Summary(field, 0, Double.NaN, Double.NaN, Double.NaN);
+        }
+        long newest = timeAt(physical(slot, counts[slot] - 1));
+        return summarize(zipcode, field, newest - unit.toMillis(window), newest);
+    }
+    
+    /**
+     * @return Direct memory held by the columns, in bytes
+     */
+    public long getOffHeapBytes() {
+        return (long) maxLocations * samplesPerLocation * BYTES_PER_SAMPLE;
+    }
+    
+    private int allocateSlot(String zipcode) {
+        int slot;
+        if (nextSlot < maxLocations) {
+            slot = nextSlot++;
+        } else {
+            // Reuse the ring of the least recently used zipcode
+            Map.Entry<String, Integer> eldest = slots.entrySet().iterator().next();
+            slots.remove(eldest.getKey());
+            slot = eldest.getValue();
+            evictedLocations++;
+        }
+        heads[slot] = 0;
+        counts[slot] = 0;
+        slots.put(zipcode, slot);
+        return slot;
+    }
+    
+    /**
+     * Column index of the i-th oldest sample of a slot
+     */
+    private int physical(int slot, int i) {
+        int oldest = heads[slot] - counts[slot];
+        return slot * samplesPerLocation + Math.floorMod(oldest + i, samplesPerLocation);
+    }
+    
+    /**
+     * Position (oldest first) of the first sample at or after the given time; samples are
+     * stored in time order, so this is a binary search over the ring
+     */
+    private int firstAtOrAfter(int slot, long timeMillis) {
+        int low = 0;
+        int high = counts[slot];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timeAt(physical(slot, mid)) < timeMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private long timeAt(int index) {
+        return Integer.toUnsignedLong(times.getInt(index * Integer.BYTES)) * 1000;
+    }
+    
+    private double valueAt(Field field, int index) {
+        switch (field) {
+            case TEMPERATURE:
+                return temperatures.getFloat(index * Float.BYTES);
+            case FEELS_LIKE:
+                return feelsLike.getFloat(index * Float.BYTES);
+            case HUMIDITY:
+                return humidities.get(index);
+            case PRESSURE:
+                return pressures.getFloat(index * Float.BYTES);
+            case WIND_SPEED:
+                return windSpeeds.getFloat(index * Float.BYTES);
+            case WIND_DIRECTION:
+                return windDirections.getShort(index * Short.BYTES);
+            case VISIBILITY:
+                return visibilities.getInt(index * Integer.BYTES);
+            default:
+                throw new IllegalArgumentException("Unknown field: " + field);
+        }
+    }
+    
+    private static ByteBuffer column(int capacity, int bytesPerValue) {
+        // Buffer offsets are ints, so each column is limited to 2 GB
+        long bytes = (long) capacity * bytesPerValue;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("History column exceeds 2 GB: " + bytes + " bytes");
+        }
+        return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return String.format("WeatherHistoryStore[locations=%d/%d, samples/location=%d, recorded=%d, skipped=%d, evicted=%d, offHeap=%.1fMB]",
+                slots.size(), maxLocations, samplesPerLocation, recorded, skipped, evictedLocations,
+                getOffHeapBytes() / (1024.0 * 1024.0));
+    }
+    
+    /**
+     * One stored observation, copied out of the columns
+     */
+    public static class Sample {
+        private final long timestamp;
+        private final double temperature;
+        private final double feelsLike;
+        private final int humidity;
+        private final double pressure;
+        private final double windSpeed;
+        private final int windDirection;
+        private final int visibility;
+        
+        Sample(long timestamp, double temperature, double feelsLike, int humidity, double pressure,
+               double windSpeed, int windDirection, int visibility) {
+            this.timestamp = timestamp;
+            this.temperature = temperature;
+            this.feelsLike = feelsLike;
+            this.humidity = humidity;
+            this.pressure = pressure;
+            this.windSpeed = windSpeed;
+            this.windDirection = windDirection;
+            this.visibility = visibility;
+        }
+        
+        /**
+         * @return Time of the observation in epoch milliseconds, truncated to seconds
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+        
+        public double getTemperature() {
+            return temperature;
+        }
+        
+        public double getFeelsLike() {
+            return feelsLike;
+        }
+        
+        public int getHumidity() {
+            return humidity;
+        }
+        
+        public double getPressure() {
+            return pressure;
+        }
+        
+        public double getWindSpeed() {
+            return windSpeed;
+        }
+        
+        public int getWindDirection() {
+            return windDirection;
+        }
+        
+        public int getVisibility() {
+            return visibility;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("Sample[time=%d, temp=%.1f, feelsLike=%.1f, humidity=%d%%, pressure=%.1f, wind=%.1f@%d, visibility=%d]",
+                    timestamp, temperature, feelsLike, humidity, pressure, windSpeed, windDirection, visibility);
+        }
+    }
+    
+    /**
+     * Minimum, maximum and average of one value over a range of samples
+     */
+    public static class Summary {
+        private final Field field;
+        private final int count;
+        private final double min;
+        private final double max;
+        private final double mean;
+        
+        Summary(Field field, int count, double min, double max, double mean) {
+            this.field = field;
+            this.count = count;
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+        }
+        
+        public Field getField() {
+            return field;
+        }
+        
+        public int getCount() {
+            return count;
+        }
+        
+        public double getMin() {
+            return min;
+        }
+        
+        public double getMax() {
+            return max;
+        }
+        
+        public double getMean() {
+            return mean;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%s[count=%d, min=%.1f, max=%.1f, mean=%.1f]", field, count, min, max, mean);
+        }
+    }
+} 
\ No newline at end of file
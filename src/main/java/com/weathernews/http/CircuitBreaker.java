@@ -0,0 +1,183 @@
+package com.weathernews.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker for one upstream endpoint.
+ * Outcomes of the last calls are kept in a count-based window; once enough calls were
+ * seen, the breaker opens when either the failure rate or the slow-call rate reaches its
+ * threshold. While open, calls are rejected without touching the network. After the open
+ * period a few probe calls are let through (half-open): if they all succeed quickly the
+ * breaker closes, otherwise it opens again.
+ */
+public class CircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+    
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+    
+    private final String name;
+    private final int minCalls;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenProbes;
+    
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int next;
+    private int count;
+    private int failureCount;
+    private int slowCount;
+    
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int probesStarted;
+    private int probesSucceeded;
+    private long rejected;
+    
+    /**
+     * Create a breaker from the "http.breaker.*" configuration settings
+     * @param name Endpoint name used in log messages
+     * @param config Application configuration
+     */
+    public CircuitBreaker(String name, Properties config) {
+        int windowSize = Integer.parseInt(config.getProperty("http.breaker.window", "50"));
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Breaker window must be positive");
+        }
+        this.name = name;
+        this.minCalls = Math.min(windowSize, Integer.parseInt(config.getProperty("http.breaker.min.calls", "20")));
+        this.failureRateThreshold = Double.parseDouble(config.getProperty("http.breaker.failure.rate", "50")) / 100.0;
+        this.slowCallRateThreshold = Double.parseDouble(config.getProperty("http.breaker.slow.rate", "80")) / 100.0;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(
+                Long.parseLong(config.getProperty("http.breaker.slow.call.ms", "3000")));
+        this.openNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(config.getProperty("http.breaker.open.seconds", "30")));
+        this.halfOpenProbes = Math.max(1, Integer.parseInt(config.getProperty("http.breaker.half.open.probes", "3")));
+        this.failed = new boolean[windowSize];
+        this.slow = new boolean[windowSize];
+    }
+    
+    /**
+     * Ask to make a call. Every permitted call must be followed by exactly one of
+     * {@link #onSuccess}, {@link #onFailure} or {@link #onIgnored}.
+     * @return True if the call may proceed, false if it must fail fast
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                rejected++;
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probesStarted = 0;
+            probesSucceeded = 0;
+            logger.info("Circuit breaker {} half-open, probing upstream", name);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesStarted >= halfOpenProbes) {
+                rejected++;
+                return false;
+            }
+            probesStarted++;
+        }
+        return true;
+    }
+    
+    /**
+     * Record a successful call
+     * @param nanos Call latency
+     */
+    public synchronized void onSuccess(long nanos) {
+        record(false, nanos > slowCallNanos);
+    }
+    
+    /**
+     * Record a failed call
+     * @param nanos Call latency
+     */
+    public synchronized void onFailure(long nanos) {
+        record(true, nanos > slowCallNanos);
+    }
+    
+    /**
+     * Release a permitted call without recording an outcome, e.g. when the caller was interrupted
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && probesStarted > 0) {
+            probesStarted--;
+        }
+    }
+    
+    public synchronized State getState() {
+        return state;
+    }
+    
+    /**
+     * @return Number of calls rejected while open or while half-open probes were in flight
+     */
+    public synchronized long getRejectedCount() {
+        return rejected;
+    }
+    
+    private void record(boolean failure, boolean slowCall) {
+        if (state == State.HALF_OPEN) {
+            if (failure || slowCall) {
+                open("half-open probe " + (failure ? "failed" : "was slow"));
+            } else if (++probesSucceeded >= halfOpenProbes) {
+                reset();
+                logger.info("Circuit breaker {} closed", name);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // Late outcome of a call started before the breaker opened
+            return;
+        }
+        
+        if (count == failed.length) {
+            failureCount -= failed[next] ? 1 : 0;
+            slowCount -= slow[next] ? 1 : 0;
+        } else {
+            count++;
+        }
+        failed[next] = failure;
+        slow[next] = slowCall;
+        failureCount += failure ? 1 : 0;
+        slowCount += slowCall ? 1 : 0;
+        next = (next + 1) % failed.length;
+        
+        if (count >= minCalls) {
+            if (failureCount >= failureRateThreshold * count) {
+                open(String.format("failure rate %.0f%%", 100.0 * failureCount / count));
+            } else if (slowCount >= slowCallRateThreshold * count) {
+                open(String.format("slow-call rate %.0f%%", 100.0 * slowCount / count));
+            }
+        }
+    }
+    
+    private void open(String reason) {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        logger.warn("Circuit breaker {} opened ({}); failing fast for {}s",
+                name, reason, TimeUnit.NANOSECONDS.toSeconds(openNanos));
+    }
+    
+    private void reset() {
+        state = State.CLOSED;
+        next = 0;
+        count = 0;
+        failureCount = 0;
+        slowCount = 0;
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return String.format("%s: %s (calls=%d, failures=%d, slow=%d, rejected=%d)",
+                name, state, count, failureCount, slowCount, rejected);
+    }
+} 
\ No newline at end of file
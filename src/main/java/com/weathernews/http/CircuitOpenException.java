@@ -0,0 +1,24 @@
+package com.weathernews.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of calling an upstream endpoint whose circuit breaker is open
+ */
+public class CircuitOpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+    
+    private final String endpoint;
+    
+    /**
+     * @param endpoint Host and path of the endpoint that is failing fast
+     */
+    public CircuitOpenException(String endpoint) {
+        super("Circuit breaker open for " + endpoint + "; upstream is unavailable");
+        this.endpoint = endpoint;
+    }
+    
+    public String getEndpoint() {
+        return endpoint;
+    }
+} 
\ No newline at end of file
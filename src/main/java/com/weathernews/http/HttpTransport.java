@@ -0,0 +1,697 @@
+package com.weathernews.http;
+
+import com.weathernews.metrics.MetricsRegistry;
+import com.weathernews.metrics.OperationMetrics;
+import okhttp3.Cache;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shared HTTP transport used by all services.
+ * Wraps a single OkHttpClient so that the connection pool, dispatcher and TLS
+ * session cache are reused across services talking to the same hosts.
+ * <p>
+ * When hedging is enabled, a GET that has not returned after a percentile of its
+ * endpoint's recent latency is sent a second time; the first response wins and the
+ * other call is cancelled. Hedges are limited by a budget relative to request volume.
+ * <p>
+ * Each endpoint (host and path) also has a {@link CircuitBreaker} that fails calls fast
+ * with a {@link CircuitOpenException} while the upstream is unhealthy, and calls get an
+ * overall timeout derived from the endpoint's recent p99 latency rather than a constant.
+ * <p>
+ * Hosts with a configured quota get a {@link TokenBucket} per API key that schedules
+ * requests by the thread's {@link RequestPriority} before they are sent.
+ * <p>
+ * Optionally responses are kept in a size-capped disk cache that honours the upstream's
+ * freshness headers and revalidates stale entries with ETag/Last-Modified. API keys are
+ * removed from the URL before the cache sees it and added back only on the network request,
+ * so entries survive key rotation and no key is written to disk.
+ */
+public class HttpTransport {
+    private static final Logger logger = LoggerFactory.getLogger(HttpTransport.class);
+    /** Query parameters carrying API keys, left out of cache keys */
+    private static final List<String> API_KEY_PARAMETERS = Arrays.asList("appid", "apiKey");
+    
+    private final OkHttpClient client;
+    private final int maxRequestsPerHost;
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final Map<String, LatencyTracker> latencies = new ConcurrentHashMap<>();
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Map<String, Double> hostQuotas = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> quotas = new ConcurrentHashMap<>();
+    private final Map<String, OperationMetrics> endpointMetrics = new ConcurrentHashMap<>();
+    private volatile MetricsRegistry metrics;
+    private final Properties config;
+    private final boolean breakerEnabled;
+    private final boolean adaptiveTimeout;
+    private final double timeoutMultiplier;
+    private final long minTimeoutMillis;
+    private final long maxTimeoutMillis;
+    private final boolean hedgeEnabled;
+    private final double hedgePercentile;
+    private final long hedgeMinDelayNanos;
+    private final int hedgeMinSamples;
+    private final HedgeBudget hedgeBudget;
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    
+    public HttpTransport() {
+        this(new Properties());
+    }
+    
+    /**
+     * Create a transport from the "http.*" configuration settings
+     * @param config Application configuration
+     */
+    public HttpTransport(Properties config) {
+        long connectTimeout = Long.parseLong(config.getProperty("http.timeout.connect", "10"));
+        long readTimeout = Long.parseLong(config.getProperty("http.timeout.read", "10"));
+        int maxIdleConnections = Integer.parseInt(config.getProperty("http.pool.max.idle", "16"));
+        long keepAlive = Long.parseLong(config.getProperty("http.pool.keepalive", "300"));
+        int maxRequests = Integer.parseInt(config.getProperty("http.max.requests", "64"));
+        boolean http2 = Boolean.parseBoolean(config.getProperty("http.http2", "true"));
+        boolean gzip = Boolean.parseBoolean(config.getProperty("http.gzip", "true"));
+        boolean cacheEnabled = Boolean.parseBoolean(config.getProperty("http.cache.enabled", "false"));
+        this.maxRequestsPerHost = Integer.parseInt(config.getProperty("http.max.requests.per.host", "16"));
+        this.config = config;
+        this.breakerEnabled = Boolean.parseBoolean(config.getProperty("http.breaker.enabled", "true"));
+        this.adaptiveTimeout = Boolean.parseBoolean(config.getProperty("http.timeout.adaptive", "true"));
+        this.timeoutMultiplier = Double.parseDouble(config.getProperty("http.timeout.multiplier", "3"));
+        this.minTimeoutMillis = Long.parseLong(config.getProperty("http.timeout.min.ms", "1000"));
+        this.maxTimeoutMillis = TimeUnit.SECONDS.toMillis(connectTimeout + readTimeout);
+        this.hedgeEnabled = Boolean.parseBoolean(config.getProperty("http.hedge.enabled", "false"));
+        this.hedgePercentile = Double.parseDouble(config.getProperty("http.hedge.percentile", "95"));
+        this.hedgeMinDelayNanos = TimeUnit.MILLISECONDS.toNanos(
+                Long.parseLong(config.getProperty("http.hedge.min.delay.ms", "50")));
+        this.hedgeMinSamples = Integer.parseInt(config.getProperty("http.hedge.min.samples", "20"));
+        this.hedgeBudget = new HedgeBudget(Double.parseDouble(config.getProperty("http.hedge.budget.percent", "5")));
+        
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectTimeout(connectTimeout, TimeUnit.SECONDS)
+                .readTimeout(readTimeout, TimeUnit.SECONDS)
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAlive, TimeUnit.SECONDS))
+                .dispatcher(dispatcher)
+                .protocols(http2
+                        ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : Collections.singletonList(Protocol.HTTP_1_1));
+        
+        // OkHttp negotiates gzip transparently; only opt out when explicitly disabled
+        if (!gzip) {
+            builder.addInterceptor(chain -> chain.proceed(chain.request().newBuilder()
+                    .header("Accept-Encoding", "identity")
+                    .build()));
+        }
+        
+        Cache cache = null;
+        if (cacheEnabled) {
+            File directory = new File(config.getProperty("http.cache.dir", "data/http-cache"));
+            long maxBytes = Long.parseLong(config.getProperty("http.cache.max.mb", "50")) * 1024 * 1024;
+            cache = new Cache(directory, maxBytes);
+            builder.cache(cache)
+                    .addInterceptor(HttpTransport::stripApiKey)
+                    .addNetworkInterceptor(HttpTransport::restoreApiKey);
+        }
+        
+        this.client = builder.build();
+        logger.info("HTTP transport initialized (pool={}, keepAlive={}s, maxPerHost={}, http2={}, gzip={}, hedging={}, cache={})",
+                maxIdleConnections, keepAlive, maxRequestsPerHost, http2, gzip,
+                hedgeEnabled ? "p" + hedgePercentile : "off",
+                cache != null ? cache.directory() + " (" + cache.maxSize() / (1024 * 1024) + " MB)" : "off");
+    }
+    
+    /**
+     * Record latency, outcome and decoded response bytes of every upstream endpoint as
+     * "upstream.&lt;host&gt;&lt;path&gt;" operations
+     * @param metrics Registry to record into, or null to stop recording
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+        endpointMetrics.clear();
+    }
+    
+    /**
+     * Execute a request synchronously, honouring the endpoint's circuit breaker, the request
+     * quota and the per-host concurrency limit. The host permit is held until the response
+     * body is closed.
+     * @param request The request to execute
+     * @return The response; callers must close it
+     * @throws CircuitOpenException if the endpoint's circuit breaker is open
+     * @throws QuotaExceededException if the request was shed to stay within the quota
+     * @throws IOException if the request fails
+     */
+    public Response execute(Request request) throws IOException {
+        String endpoint = request.url().host() + request.url().encodedPath();
+        CircuitBreaker breaker = breakerEnabled ? getCircuitBreaker(endpoint) : null;
+        if (breaker != null && !breaker.tryAcquire()) {
+            throw new CircuitOpenException(endpoint);
+        }
+        
+        TokenBucket quota = getQuota(request.url());
+        if (quota != null) {
+            try {
+                quota.acquire(RequestPriority.current());
+            } catch (IOException e) {
+                if (breaker != null) {
+                    breaker.onIgnored();
+                }
+                throw e;
+            }
+        }
+        
+        OperationMetrics upstream = getEndpointMetrics(endpoint);
+        long started = System.nanoTime();
+        Response response;
+        try {
+            response = executeWithPermit(request, endpoint, quota, upstream);
+        } catch (IOException | RuntimeException e) {
+            if (upstream != null) {
+                upstream.recordFailure(System.nanoTime() - started, e);
+            }
+            if (breaker != null) {
+                if (Thread.currentThread().isInterrupted()) {
+                    breaker.onIgnored();
+                } else {
+                    breaker.onFailure(System.nanoTime() - started);
+                }
+            }
+            throw e;
+        }
+        
+        if (quota != null && isCacheHit(response)) {
+            quota.refund();
+        }
+        if (quota != null && response.code() == 429) {
+            quota.onThrottled(retryAfterNanos(response));
+            logger.warn("Upstream throttled {} despite the client-side quota", endpoint);
+        }
+        // Server errors and throttling count against the upstream; other statuses are answers
+        long elapsed = System.nanoTime() - started;
+        boolean failed = response.code() >= 500 || response.code() == 429;
+        if (upstream != null) {
+            if (failed) {
+                upstream.recordFailure(elapsed, null);
+            } else {
+                upstream.recordSuccess(elapsed);
+            }
+        }
+        if (breaker != null) {
+            if (failed) {
+                breaker.onFailure(elapsed);
+            } else {
+                breaker.onSuccess(elapsed);
+            }
+        }
+        return response;
+    }
+    
+    private OperationMetrics getEndpointMetrics(String endpoint) {
+        MetricsRegistry registry = metrics;
+        if (registry == null) {
+            return null;
+        }
+        return endpointMetrics.computeIfAbsent(endpoint, key -> registry.operation("upstream." + key));
+    }
+    
+    private Response executeWithPermit(Request request, String endpoint, TokenBucket quota,
+                                       OperationMetrics upstream) throws IOException {
+        Semaphore permits = hostPermits.computeIfAbsent(request.url().host(),
+                host -> new Semaphore(maxRequestsPerHost, true));
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for connection to " + request.url().host());
+        }
+        
+        LatencyTracker tracker = getLatencyTracker(endpoint);
+        long hedgeDelay = hedgeDelayNanos(request, tracker);
+        if (hedgeDelay >= 0) {
+            return new HedgedCall(request, tracker, permits, quota, upstream).execute(hedgeDelay);
+        }
+        
+        Response response;
+        long started = System.nanoTime();
+        try {
+            response = newCall(request, tracker).execute();
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        if (!isCacheHit(response)) {
+            tracker.record(System.nanoTime() - started);
+        }
+        return withPermit(response, permits, upstream);
+    }
+    
+    /**
+     * @param endpoint Host and path of the endpoint, e.g. "api.openweathermap.org/data/2.5/weather"
+     * @return Recent response latencies of the endpoint
+     */
+    public LatencyTracker getLatencyTracker(String endpoint) {
+        return latencies.computeIfAbsent(endpoint, key -> new LatencyTracker(256));
+    }
+    
+    /**
+     * @param endpoint Host and path of the endpoint
+     * @return The endpoint's circuit breaker
+     */
+    public CircuitBreaker getCircuitBreaker(String endpoint) {
+        return breakers.computeIfAbsent(endpoint, key -> new CircuitBreaker(key, config));
+    }
+    
+    /**
+     * Find the quota for a request: one token bucket per host and API key, for hosts with a
+     * configured "http.quota.&lt;host&gt;.per.minute"
+     * @param url The request URL
+     * @return The quota, or null if the host is not limited
+     */
+    private TokenBucket getQuota(HttpUrl url) {
+        String host = url.host();
+        double perMinute = hostQuotas.computeIfAbsent(host, key ->
+                Double.parseDouble(config.getProperty("http.quota." + key + ".per.minute", "0")));
+        if (perMinute <= 0) {
+            return null;
+        }
+        String appId = url.queryParameter("appid");
+        String apiKey = appId != null ? appId : url.queryParameter("apiKey");
+        return quotas.computeIfAbsent(apiKey != null ? host + "|" + apiKey : host, key -> {
+            double burst = Double.parseDouble(config.getProperty("http.quota." + host + ".burst",
+                    String.valueOf(Math.max(1, perMinute / 6))));
+            return new TokenBucket(quotaName(host, apiKey), perMinute, burst, config);
+        });
+    }
+    
+    /**
+     * @return Quota name for messages, showing only the last characters of the API key
+     */
+    private static String quotaName(String host, String apiKey) {
+        if (apiKey == null || apiKey.length() < 4) {
+            return host;
+        }
+        return host + " (key ..." + apiKey.substring(apiKey.length() - 4) + ")";
+    }
+    
+    private static long retryAfterNanos(Response response) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter != null) {
+            try {
+                return TimeUnit.SECONDS.toNanos(Long.parseLong(retryAfter.trim()));
+            } catch (NumberFormatException e) {
+                // HTTP-date form; fall back to the default pause
+            }
+        }
+        return TimeUnit.SECONDS.toNanos(10);
+    }
+    
+    /**
+     * @return Number of hedge requests sent
+     */
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+    
+    /**
+     * @return Number of hedge requests that answered before the original request
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.sum();
+    }
+    
+    /**
+     * @return Delay before hedging the request, or -1 if it must not be hedged
+     */
+    private long hedgeDelayNanos(Request request, LatencyTracker tracker) {
+        if (!hedgeEnabled || !"GET".equals(request.method())) {
+            return -1;
+        }
+        hedgeBudget.onRequest();
+        if (tracker.getSampleCount() < hedgeMinSamples) {
+            return -1;
+        }
+        return Math.max(hedgeMinDelayNanos, tracker.percentile(hedgePercentile));
+    }
+    
+    /**
+     * Create a call whose overall timeout is a multiple of the endpoint's recent p99 latency,
+     * clamped between the configured minimum and the connect plus read timeout
+     */
+    private Call newCall(Request request, LatencyTracker tracker) {
+        Call call = client.newCall(request);
+        if (adaptiveTimeout && tracker.getSampleCount() >= 20) {
+            long p99Millis = TimeUnit.NANOSECONDS.toMillis(tracker.percentile(99));
+            long timeout = Math.max(minTimeoutMillis, Math.min(maxTimeoutMillis, (long) (p99Millis * timeoutMultiplier)));
+            call.timeout().timeout(timeout, TimeUnit.MILLISECONDS);
+        }
+        return call;
+    }
+    
+    /**
+     * @return True if the response came from the HTTP cache without contacting the upstream
+     */
+    private static boolean isCacheHit(Response response) {
+        return response.networkResponse() == null && response.cacheResponse() != null;
+    }
+    
+    /**
+     * Application interceptor: remove the API key from the URL so the cache keys and stores
+     * the request without it, and remember the key in a tag for {@link #restoreApiKey}
+     */
+    private static Response stripApiKey(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        HttpUrl url = request.url();
+        for (String name : API_KEY_PARAMETERS) {
+            String value = url.queryParameter(name);
+            if (value != null) {
+                return chain.proceed(request.newBuilder()
+                        .url(url.newBuilder().removeAllQueryParameters(name).build())
+                        .tag(ApiKey.class, new ApiKey(url.host(), name, value))
+                        .build());
+            }
+        }
+        return chain.proceed(request);
+    }
+    
+    /**
+     * Network interceptor: add the API key back to requests that go to the upstream, including
+     * conditional revalidations. The response keeps the keyless request, which is what the
+     * cache stores. Redirects to other hosts do not get the key.
+     */
+    private static Response restoreApiKey(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        ApiKey key = request.tag(ApiKey.class);
+        if (key == null || !key.host.equals(request.url().host())) {
+            return chain.proceed(request);
+        }
+        Request keyed = request.newBuilder()
+                .url(request.url().newBuilder().addQueryParameter(key.name, key.value).build())
+                .build();
+        return chain.proceed(keyed).newBuilder()
+                .request(request)
+                .build();
+    }
+    
+    private static Response withPermit(Response response, Semaphore permits, OperationMetrics upstream) {
+        ResponseBody body = response.body();
+        if (body == null) {
+            permits.release();
+            return response;
+        }
+        return response.newBuilder()
+                .body(new PermitReleasingBody(body, permits, upstream))
+                .build();
+    }
+    
+    /**
+     * @return The underlying shared OkHttpClient
+     */
+    public OkHttpClient getClient() {
+        return client;
+    }
+    
+    @Override
+    public String toString() {
+        long open = breakers.values().stream()
+                .filter(breaker -> breaker.getState() != CircuitBreaker.State.CLOSED)
+                .count();
+        Cache cache = client.cache();
+        String cacheStats = cache == null ? "off" : String.format("hits=%d, conditionalHits=%d, network=%d, size=%dKB",
+                cache.hitCount(), cache.networkCount() - (cache.requestCount() - cache.hitCount()),
+                cache.networkCount(), sizeKb(cache));
+        return String.format("HttpTransport[endpoints=%d, hedges=%d, hedgeWins=%d, openCircuits=%d, cache=[%s], quotas=%s]",
+                latencies.size(), getHedgeCount(), getHedgeWinCount(), open, cacheStats, quotas.values());
+    }
+    
+    private static long sizeKb(Cache cache) {
+        try {
+            return cache.size() / 1024;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+    
+    /**
+     * Clean up resources
+     */
+    public void close() {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+        Cache cache = client.cache();
+        if (cache != null) {
+            try {
+                cache.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close HTTP cache: {}", e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * One logical request served by up to two asynchronous calls: the original and,
+     * if it is slow, a hedge. The first response wins and the other call is cancelled.
+     */
+    private class HedgedCall {
+        private final Request request;
+        private final LatencyTracker tracker;
+        private final Semaphore permits;
+        private final TokenBucket quota;
+        private final OperationMetrics upstream;
+        private final CompletableFuture<Response> winner = new CompletableFuture<>();
+        private final List<Call> calls = new CopyOnWriteArrayList<>();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        
+        HedgedCall(Request request, LatencyTracker tracker, Semaphore permits, TokenBucket quota,
+                   OperationMetrics upstream) {
+            this.request = request;
+            this.tracker = tracker;
+            this.permits = permits;
+            this.quota = quota;
+            this.upstream = upstream;
+        }
+        
+        /**
+         * Run the request, hedging it once after the delay if the budget, a host permit and
+         * spare quota (as for a prefetch) allow
+         * @param hedgeDelayNanos Time to wait for the original call before hedging
+         * @return The first response
+         * @throws IOException if every call failed
+         */
+        Response execute(long hedgeDelayNanos) throws IOException {
+            // The caller already holds the host permit for the original call
+            start(false);
+            try {
+                try {
+                    return winner.get(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    if (hedgeBudget.tryAcquire()) {
+                        if ((quota == null || quota.tryAcquire(RequestPriority.PREFETCH)) && permits.tryAcquire()) {
+                            hedges.increment();
+                            start(true);
+                        } else {
+                            hedgeBudget.refund();
+                        }
+                    }
+                }
+                return winner.get();
+            } catch (InterruptedException e) {
+                cancel();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for " + request.url().host());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+        
+        private void start(boolean hedge) {
+            Call call = newCall(request, tracker);
+            calls.add(call);
+            outstanding.incrementAndGet();
+            long started = System.nanoTime();
+            call.enqueue(new Callback() {
+                @Override
+                public void onResponse(Call call, Response response) {
+                    if (!isCacheHit(response)) {
+                        tracker.record(System.nanoTime() - started);
+                    }
+                    Response wrapped = withPermit(response, permits, upstream);
+                    if (winner.complete(wrapped)) {
+                        if (hedge) {
+                            hedgeWins.increment();
+                        }
+                        for (Call other : calls) {
+                            if (other != call) {
+                                other.cancel();
+                            }
+                        }
+                    } else {
+                        wrapped.close();
+                    }
+                }
+                
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    permits.release();
+                    if (outstanding.decrementAndGet() == 0) {
+                        winner.completeExceptionally(e);
+                    }
+                }
+            });
+        }
+        
+        private void cancel() {
+            if (!winner.completeExceptionally(new InterruptedIOException("Request abandoned"))
+                    && !winner.isCompletedExceptionally()) {
+                winner.join().close();
+            }
+            for (Call call : calls) {
+                call.cancel();
+            }
+        }
+    }
+    
+    /**
+     * API key removed from a request URL, to be added back for the same host
+     */
+    private static class ApiKey {
+        final String host;
+        final String name;
+        final String value;
+        
+        ApiKey(String host, String name, String value) {
+            this.host = host;
+            this.name = name;
+            this.value = value;
+        }
+    }
+    
+    /**
+     * Limits hedges to a percentage of requests. Every hedge-eligible request earns a
+     * fraction of a hedge, up to a small burst, and every hedge spends a whole one.
+     */
+    private static class HedgeBudget {
+        private static final long UNITS_PER_HEDGE = 10_000;
+        private static final long MAX_UNITS = 10 * UNITS_PER_HEDGE;
+        
+        private final long unitsPerRequest;
+        private final AtomicLong units = new AtomicLong();
+        
+        HedgeBudget(double percent) {
+            this.unitsPerRequest = Math.round(percent / 100.0 * UNITS_PER_HEDGE);
+        }
+        
+        void onRequest() {
+            units.accumulateAndGet(unitsPerRequest, (current, earned) -> Math.min(current + earned, MAX_UNITS));
+        }
+        
+        boolean tryAcquire() {
+            long current;
+            do {
+                current = units.get();
+                if (current < UNITS_PER_HEDGE) {
+                    return false;
+                }
+            } while (!units.compareAndSet(current, current - UNITS_PER_HEDGE));
+            return true;
+        }
+        
+        void refund() {
+            units.accumulateAndGet(UNITS_PER_HEDGE, (current, refunded) -> Math.min(current + refunded, MAX_UNITS));
+        }
+    }
+    
+    /**
+     * Response body that returns its host permit once the body is closed and counts the
+     * decoded bytes read from it
+     */
+    private static class PermitReleasingBody extends ResponseBody {
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+        
+        PermitReleasingBody(ResponseBody delegate, Semaphore permits, OperationMetrics upstream) {
+            this.delegate = delegate;
+            AtomicBoolean released = new AtomicBoolean();
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    long read = super.read(sink, byteCount);
+                    if (read > 0 && upstream != null) {
+                        upstream.recordBytes(read);
+                    }
+                    return read;
+                }
+                
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (released.compareAndSet(false, true)) {
+                            permits.release();
+                        }
+                    }
+                }
+            });
+        }
+        
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+        
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+        
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+} 
\ No newline at end of file
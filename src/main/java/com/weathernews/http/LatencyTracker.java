@@ -0,0 +1,68 @@
+package com.weathernews.http;
+
+import java.util.Arrays;
+
+/**
+ * Sliding window of the most recent latencies of one endpoint.
+ * Percentiles are recomputed from a sorted copy of the window at most once every
+ * few samples, so reading them on every request stays cheap.
+ */
+public class LatencyTracker {
+    private static final int RECOMPUTE_INTERVAL = 16;
+    
+    private final long[] window;
+    private final long[] sorted;
+    private int next;
+    private int count;
+    private int sortedCount;
+    private int sinceSort;
+    
+    /**
+     * @param windowSize Number of recent samples to keep
+     */
+    public LatencyTracker(int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size must be positive");
+        }
+        this.window = new long[windowSize];
+        this.sorted = new long[windowSize];
+    }
+    
+    /**
+     * Record one observed latency
+     * @param nanos Latency in nanoseconds
+     */
+    public synchronized void record(long nanos) {
+        window[next] = nanos;
+        next = (next + 1) % window.length;
+        if (count < window.length) {
+            count++;
+        }
+        sinceSort++;
+    }
+    
+    /**
+     * @return Number of samples currently in the window
+     */
+    public synchronized int getSampleCount() {
+        return count;
+    }
+    
+    /**
+     * @param percentile Percentile between 0 and 100
+     * @return Latency at the percentile in nanoseconds, or -1 if no samples were recorded
+     */
+    public synchronized long percentile(double percentile) {
+        if (count == 0) {
+            return -1;
+        }
+        if (sortedCount == 0 || sinceSort >= RECOMPUTE_INTERVAL) {
+            System.arraycopy(window, 0, sorted, 0, count);
+            Arrays.sort(sorted, 0, count);
+            sortedCount = count;
+            sinceSort = 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sortedCount) - 1;
+        return sorted[Math.max(0, Math.min(index, sortedCount - 1))];
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,25 @@
+package com.weathernews.http;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request is shed because its upstream quota cannot serve it in time
+ */
+public class QuotaExceededException extends IOException {
+    private static final long serialVersionUID = 1L;
+    
+    private final RequestPriority priority;
+    
+    /**
+     * @param quota Name of the quota that is exhausted
+     * @param priority Priority of the shed request
+     */
+    public QuotaExceededException(String quota, RequestPriority priority) {
+        super("Request quota for " + quota + " exhausted; " + priority.name().toLowerCase() + " request shed");
+        this.priority = priority;
+    }
+    
+    public RequestPriority getPriority() {
+        return priority;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,49 @@
+package com.weathernews.http;
+
+/**
+ * Priority of outbound requests made by the current thread. Interactive lookups are
+ * served first by the quota limiter; batch work is deferred and prefetching is shed
+ * before the quota runs out. Threads start out {@link #INTERACTIVE}.
+ */
+public enum RequestPriority {
+    INTERACTIVE,
+    BATCH,
+    PREFETCH;
+    
+    private static final ThreadLocal<RequestPriority> CURRENT = ThreadLocal.withInitial(() -> INTERACTIVE);
+    
+    /**
+     * @return Priority of requests made by the current thread
+     */
+    public static RequestPriority current() {
+        return CURRENT.get();
+    }
+    
+    /**
+     * Set the priority of requests made by the current thread
+     * @param priority The new priority
+     * @return The previous priority, to be restored with another call to this method
+     */
+    public static RequestPriority set(RequestPriority priority) {
+        RequestPriority previous = CURRENT.get();
+        CURRENT.set(priority);
+        return previous;
+    }
+    
+    /**
+     * Wrap a task so that it runs with the given priority on whichever thread executes it
+     * @param priority Priority for the task's requests
+     * @param task The task
+     * @return The wrapped task
+     */
+    public static Runnable wrap(RequestPriority priority, Runnable task) {
+        return () -> {
+            RequestPriority previous = set(priority);
+            try {
+                task.run();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+} 
\ No newline at end of file
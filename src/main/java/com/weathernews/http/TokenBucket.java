@@ -0,0 +1,198 @@
+package com.weathernews.http;
+
+import java.io.InterruptedIOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket enforcing a client-side request quota, with priority scheduling.
+ * <ul>
+ * <li>Interactive requests may use every token and wait briefly for the next one.</li>
+ * <li>Batch requests leave a reserve of tokens for interactive traffic and wait longer
+ * (they are deferred rather than failed).</li>
+ * <li>Prefetch requests only run while the bucket is at least half full and never wait.</li>
+ * </ul>
+ * While a higher-priority request is waiting, lower-priority ones do not take tokens.
+ * Uses a {@link ReentrantLock} rather than monitors so waiting virtual threads do not pin
+ * their carrier.
+ */
+public class TokenBucket {
+    private final String name;
+    private final double tokensPerNano;
+    private final double capacity;
+    private final double batchReserve;
+    private final long[] maxWaitNanos = new long[RequestPriority.values().length];
+    private final int[] waiting = new int[RequestPriority.values().length];
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    
+    private double tokens;
+    private long refilledAt = System.nanoTime();
+    private long pausedUntil = refilledAt;
+    private long granted;
+    private long deferred;
+    private long shed;
+    
+    /**
+     * @param name Quota name used in errors and statistics
+     * @param perMinute Sustained requests per minute
+     * @param capacity Maximum burst of requests
+     * @param config Application configuration for the "http.quota.*" scheduling settings
+     */
+    public TokenBucket(String name, double perMinute, double capacity, Properties config) {
+        if (perMinute <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("Quota rate must be positive and capacity at least 1");
+        }
+        this.name = name;
+        this.tokensPerNano = perMinute / TimeUnit.MINUTES.toNanos(1);
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.batchReserve = capacity * Double.parseDouble(config.getProperty("http.quota.batch.reserve.percent", "20")) / 100.0;
+        maxWaitNanos[RequestPriority.INTERACTIVE.ordinal()] = TimeUnit.MILLISECONDS.toNanos(
+                Long.parseLong(config.getProperty("http.quota.max.wait.interactive.ms", "2000")));
+        maxWaitNanos[RequestPriority.BATCH.ordinal()] = TimeUnit.MILLISECONDS.toNanos(
+                Long.parseLong(config.getProperty("http.quota.max.wait.batch.ms", "60000")));
+    }
+    
+    /**
+     * Take a token for a request, waiting as long as its priority allows
+     * @param priority Priority of the request
+     * @throws QuotaExceededException if the request is shed
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public void acquire(RequestPriority priority) throws QuotaExceededException, InterruptedIOException {
+        int level = priority.ordinal();
+        long start = System.nanoTime();
+        boolean waited = false;
+        lock.lock();
+        try {
+            waiting[level]++;
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    refill(now);
+                    double needed = 1 + reserveFor(priority);
+                    if (!higherPriorityWaiting(level) && tokens >= needed && now - pausedUntil >= 0) {
+                        tokens -= 1;
+                        granted++;
+                        if (waited) {
+                            deferred++;
+                        }
+                        return;
+                    }
+                    
+                    long remaining = maxWaitNanos[level] - (now - start);
+                    if (remaining <= 0) {
+                        shed++;
+                        throw new QuotaExceededException(name, priority);
+                    }
+                    // Behind a higher-priority waiter, wait for it to be served; otherwise for the next token
+                    long wait = remaining;
+                    if (!higherPriorityWaiting(level)) {
+                        long untilToken = Math.max(pausedUntil - now, (long) ((needed - tokens) / tokensPerNano));
+                        wait = Math.max(1, Math.min(remaining, untilToken));
+                    }
+                    waited = true;
+                    changed.awaitNanos(wait);
+                }
+            } finally {
+                waiting[level]--;
+                changed.signalAll();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for request quota " + name);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Take a token only if one is available right now for the priority
+     * @param priority Priority of the request
+     * @return True if a token was taken
+     */
+    public boolean tryAcquire(RequestPriority priority) {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            refill(now);
+            if (higherPriorityWaiting(priority.ordinal()) || now - pausedUntil < 0
+                    || tokens < 1 + reserveFor(priority)) {
+                return false;
+            }
+            tokens -= 1;
+            granted++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Give back the token of a request that never reached the upstream, e.g. one answered
+     * from the HTTP cache
+     */
+    public void refund() {
+        lock.lock();
+        try {
+            tokens = Math.min(capacity, tokens + 1);
+            granted--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * React to the upstream throttling us anyway: drain the bucket and pause it
+     * @param retryAfterNanos How long the upstream asked us to back off
+     */
+    public void onThrottled(long retryAfterNanos) {
+        lock.lock();
+        try {
+            tokens = 0;
+            pausedUntil = System.nanoTime() + retryAfterNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private double reserveFor(RequestPriority priority) {
+        switch (priority) {
+            case BATCH:
+                return batchReserve;
+            case PREFETCH:
+                return capacity / 2;
+            default:
+                return 0;
+        }
+    }
+    
+    private boolean higherPriorityWaiting(int level) {
+        for (int i = 0; i < level; i++) {
+            if (waiting[i] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+    }
+    
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return String.format("%s: granted=%d, deferred=%d, shed=%d, tokens=%.1f/%.0f",
+                    name, granted, deferred, shed, tokens, capacity);
+        } finally {
+            lock.unlock();
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,139 @@
+package com.weathernews.metrics;
+
+import com.weathernews.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Named operation metrics, optionally exposed as JMX MBeans under
+ * "com.weathernews:type=Operation,name=&lt;operation&gt;" and logged periodically
+ */
+public class MetricsRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsRegistry.class);
+    
+    private final Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+    private final boolean jmxEnabled;
+    private final MBeanServer mbeanServer;
+    private ScheduledExecutorService reporter;
+    
+    /**
+     * @param jmxEnabled Whether to register every operation with the platform MBean server
+     */
+    public MetricsRegistry(boolean jmxEnabled) {
+        this.jmxEnabled = jmxEnabled;
+        this.mbeanServer = jmxEnabled ? ManagementFactory.getPlatformMBeanServer() : null;
+    }
+    
+    /**
+     * Get or create the metrics of an operation
+     * @param name Operation name, e.g. "WeatherService.getWeatherByLocation"
+     * @return The operation's metrics
+     */
+    public OperationMetrics operation(String name) {
+        OperationMetrics metrics = operations.get(name);
+        if (metrics != null) {
+            return metrics;
+        }
+        return operations.computeIfAbsent(name, key -> {
+            OperationMetrics created = new OperationMetrics(key);
+            if (jmxEnabled) {
+                try {
+                    mbeanServer.registerMBean(created, objectName(key));
+                } catch (JMException e) {
+                    logger.warn("Failed to register JMX metrics for {}: {}", key, e.getMessage());
+                }
+            }
+            return created;
+        });
+    }
+    
+    /**
+     * Time a call as an operation of a registry that may be absent
+     * @param registry The registry, or null to run the call without recording it
+     * @param operation Operation name
+     * @param call The call
+     * @return The call's result
+     * @throws IOException if the call fails
+     */
+    public static <T> T time(MetricsRegistry registry, String operation,
+                             OperationMetrics.Timed<T> call) throws IOException {
+        if (registry == null) {
+            return call.call();
+        }
+        return registry.operation(operation).time(call);
+    }
+    
+    /**
+     * @return All operations, sorted by name
+     */
+    public List<OperationMetrics> getOperations() {
+        List<OperationMetrics> sorted = new ArrayList<>(operations.values());
+        sorted.sort(Comparator.comparing(OperationMetrics::getName));
+        return sorted;
+    }
+    
+    /**
+     * Log a summary of every operation that has been called at a fixed interval
+     * @param interval Time between summaries
+     * @param unit Unit of the interval
+     */
+    public synchronized void startLogging(long interval, TimeUnit unit) {
+        if (reporter != null) {
+            throw new IllegalStateException("Metrics logging already started");
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("metrics"));
+        reporter.scheduleAtFixedRate(this::logSummary, interval, interval, unit);
+    }
+    
+    /**
+     * Log one line per operation that has been called
+     */
+    public void logSummary() {
+        List<OperationMetrics> active = getOperations();
+        active.removeIf(metrics -> metrics.getCount() == 0);
+        if (active.isEmpty()) {
+            return;
+        }
+        logger.info("Metrics summary ({} operations):", active.size());
+        for (OperationMetrics metrics : active) {
+            logger.info("  {}", metrics);
+        }
+    }
+    
+    /**
+     * Stop logging and unregister the MBeans
+     */
+    public synchronized void close() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+        if (jmxEnabled) {
+            for (String name : operations.keySet()) {
+                try {
+                    mbeanServer.unregisterMBean(objectName(name));
+                } catch (JMException e) {
+                    logger.debug("Failed to unregister JMX metrics for {}", name);
+                }
+            }
+        }
+    }
+    
+    private static ObjectName objectName(String operation) throws JMException {
+        return new ObjectName("com.weathernews:type=Operation,name=" + ObjectName.quote(operation));
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,136 @@
+package com.weathernews.metrics;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and outcome counters for one operation, such as a service method
+ * or an upstream endpoint
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    
+    public OperationMetrics(String name) {
+        this.name = name;
+    }
+    
+    /**
+     * Run and time a call, counting its outcome
+     * @param call The call
+     * @return The call's result
+     * @throws IOException if the call fails
+     */
+    public <T> T time(Timed<T> call) throws IOException {
+        long started = System.nanoTime();
+        try {
+            T result = call.call();
+            recordSuccess(System.nanoTime() - started);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            recordFailure(System.nanoTime() - started, e);
+            throw e;
+        }
+    }
+    
+    public void recordSuccess(long nanos) {
+        latency.record(nanos);
+        successes.increment();
+    }
+    
+    /**
+     * Record a failed call; timeouts and interruptions ({@link InterruptedIOException},
+     * which includes socket and call timeouts) are counted separately from other errors
+     * @param nanos Time until the failure
+     * @param error The failure
+     */
+    public void recordFailure(long nanos, Throwable error) {
+        latency.record(nanos);
+        if (error instanceof InterruptedIOException) {
+            timeouts.increment();
+        } else {
+            errors.increment();
+        }
+    }
+    
+    public void recordBytes(long count) {
+        bytes.add(count);
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    @Override
+    public long getCount() {
+        return latency.getCount();
+    }
+    
+    @Override
+    public long getSuccessCount() {
+        return successes.sum();
+    }
+    
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+    
+    @Override
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+    
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+    
+    @Override
+    public double getMeanMillis() {
+        return latency.getMeanMillis();
+    }
+    
+    @Override
+    public double getP50Millis() {
+        return latency.getPercentileMillis(50);
+    }
+    
+    @Override
+    public double getP90Millis() {
+        return latency.getPercentileMillis(90);
+    }
+    
+    @Override
+    public double getP99Millis() {
+        return latency.getPercentileMillis(99);
+    }
+    
+    @Override
+    public double getMaxMillis() {
+        return latency.getMaxMillis();
+    }
+    
+    @Override
+    public String toString() {
+        String summary = String.format("%s: count=%d ok=%d errors=%d timeouts=%d p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms",
+                name, getCount(), getSuccessCount(), getErrorCount(), getTimeoutCount(),
+                getP50Millis(), getP90Millis(), getP99Millis(), getMaxMillis());
+        long byteCount = getBytes();
+        return byteCount > 0 ? summary + String.format(" bytes=%d (%.1f KB avg)", byteCount,
+                byteCount / 1024.0 / Math.max(1, getCount())) : summary;
+    }
+    
+    /**
+     * A call measured by {@link #time(Timed)}
+     */
+    @FunctionalInterface
+    public interface Timed<T> {
+        T call() throws IOException;
+    }
+} 
\ No newline at end of file
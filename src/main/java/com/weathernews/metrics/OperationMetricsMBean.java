@@ -0,0 +1,33 @@
+package com.weathernews.metrics;
+
+/**
+ * JMX view of one instrumented operation
+ */
+public interface OperationMetricsMBean {
+    
+    long getCount();
+    
+    long getSuccessCount();
+    
+    long getErrorCount();
+    
+    /**
+     * @return Failures caused by timeouts or interruption
+     */
+    long getTimeoutCount();
+    
+    /**
+     * @return Response bytes read, for upstream endpoints
+     */
+    long getBytes();
+    
+    double getMeanMillis();
+    
+    double getP50Millis();
+    
+    double getP90Millis();
+    
+    double getP99Millis();
+    
+    double getMaxMillis();
+} 
\ No newline at end of file
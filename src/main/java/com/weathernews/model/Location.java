@@ -9,6 +9,8 @@ public class Location {
     private String state;
     private double latitude;
     private double longitude;
+    /** Formatted toString(), reset by the setters; weather lookups label every result with it */
+    private transient String label;
     
     public Location() {}
     
@@ -27,6 +29,7 @@ public class Location {
     
     public void setZipcode(String zipcode) {
         this.zipcode = zipcode;
+        this.label = null;
     }
     
     public String getCity() {
@@ -35,6 +38,7 @@ public class Location {
     
     public void setCity(String city) {
         this.city = city;
+        this.label = null;
     }
     
     public String getState() {
@@ -43,6 +47,7 @@ public class Location {
     
     public void setState(String state) {
         this.state = state;
+        this.label = null;
     }
     
     public double getLatitude() {
@@ -51,6 +56,7 @@ public class Location {
     
     public void setLatitude(double latitude) {
         this.latitude = latitude;
+        this.label = null;
     }
     
     public double getLongitude() {
@@ -59,11 +65,17 @@ public class Location {
     
     public void setLongitude(double longitude) {
         this.longitude = longitude;
+        this.label = null;
     }
     
     @Override
     public String toString() {
-        return String.format("%s, %s %s (%.4f, %.4f)", 
-                city, state, zipcode, latitude, longitude);
+        String formatted = label;
+        if (formatted == null) {
+            formatted = String.format("%s, %s %s (%.4f, %.4f)",
+                    city, state, zipcode, latitude, longitude);
+            label = formatted;
+        }
+        return formatted;
     }
 } 
\ No newline at end of file
@@ -15,6 +15,7 @@ public class Weather {
     private double pressure;
     private int visibility;
     private String icon;
+    private int cityId;
     
     public Weather() {}
     
@@ -28,6 +29,25 @@ public class Weather {
         this.windSpeed = windSpeed;
     }
     
+    /**
+     * Copy an observation, e.g. to relabel a shared cached observation for another location
+     * @param other The weather to copy
+     */
+    public Weather(Weather other) {
+        this.location = other.location;
+        this.temperature = other.temperature;
+        this.feelsLike = other.feelsLike;
+        this.description = other.description;
+        this.mainCondition = other.mainCondition;
+        this.humidity = other.humidity;
+        this.windSpeed = other.windSpeed;
+        this.windDirection = other.windDirection;
+        this.pressure = other.pressure;
+        this.visibility = other.visibility;
+        this.icon = other.icon;
+        this.cityId = other.cityId;
+    }
+    
     // Getters and Setters
     public String getLocation() {
         return location;
@@ -117,6 +137,17 @@ public class Weather {
         this.icon = icon;
     }
     
+    /**
+     * @return OpenWeatherMap id of the station the observation came from, or 0 if unknown
+     */
+    public int getCityId() {
+        return cityId;
+    }
+    
+    public void setCityId(int cityId) {
+        this.cityId = cityId;
+    }
+    
     @Override
     public String toString() {
         return String.format(
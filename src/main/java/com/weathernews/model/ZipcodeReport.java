@@ -0,0 +1,62 @@
+package com.weathernews.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents the combined location, weather and news result for a zipcode
+ */
+public class ZipcodeReport {
+    private String zipcode;
+    private Location location;
+    private Weather weather;
+    private List<NewsArticle> articles;
+    
+    public ZipcodeReport() {}
+    
+    public ZipcodeReport(String zipcode, Location location, Weather weather, List<NewsArticle> articles) {
+        this.zipcode = zipcode;
+        this.location = location;
+        this.weather = weather;
+        this.articles = articles;
+    }
+    
+    // Getters and Setters
+    public String getZipcode() {
+        return zipcode;
+    }
+    
+    public void setZipcode(String zipcode) {
+        this.zipcode = zipcode;
+    }
+    
+    public Location getLocation() {
+        return location;
+    }
+    
+    public void setLocation(Location location) {
+        this.location = location;
+    }
+    
+    public Weather getWeather() {
+        return weather;
+    }
+    
+    public void setWeather(Weather weather) {
+        this.weather = weather;
+    }
+    
+    public List<NewsArticle> getArticles() {
+        return articles != null ? articles : Collections.emptyList();
+    }
+    
+    public void setArticles(List<NewsArticle> articles) {
+        this.articles = articles;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("ZipcodeReport[%s: %s, %d articles]",
+                zipcode, location, getArticles().size());
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,272 @@
+package com.weathernews.persistence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * One fixed-size, memory-mapped file of the observation log.
+ * Records are laid out back to back as [length (4 bytes)][CRC32C of body (4 bytes)][body];
+ * a zero length marks the end of the written data, since new files are zero-filled.
+ *
+ * Each segment keeps a sparse in-memory index: its time range, the set of keys it holds and
+ * the timestamp of one record every {@value #INDEX_INTERVAL_BYTES} bytes. Timestamps never
+ * decrease within the log, so a range scan starts at the last indexed record before the
+ * range instead of at the beginning of the file.
+ */
+class LogSegment {
+    static final int HEADER_BYTES = 8;
+    private static final int INDEX_INTERVAL_BYTES = 4096;
+    
+    private final long number;
+    private final Path path;
+    private final int capacity;
+    private volatile MappedByteBuffer buffer;
+    private volatile MappedByteBuffer sealedBuffer;
+    private volatile int size;
+    private int forcedSize;
+    private long minTime = Long.MAX_VALUE;
+    private long maxTime = Long.MIN_VALUE;
+    private final Set<String> keys = new HashSet<>();
+    private long[] indexTimes = new long[16];
+    private int[] indexOffsets = new int[16];
+    private int indexCount;
+    private int recordCount;
+    
+    private LogSegment(long number, Path path, int capacity) {
+        this.number = number;
+        this.path = path;
+        this.capacity = capacity;
+    }
+    
+    /**
+     * Create an empty segment file of the given size, mapped for writing
+     */
+    static LogSegment create(Path directory, long number, int capacity) throws IOException {
+        LogSegment segment = new LogSegment(number, directory.resolve(fileName(number)), capacity);
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+        return segment;
+    }
+    
+    /**
+     * Open an existing segment and rebuild its index from the valid records. Reading stops at
+     * the end marker or at the first record whose length or checksum is invalid, e.g. one torn
+     * by a crash; when opened for writing, everything after the last valid record is zeroed.
+     * @param writable Map for appending (the newest segment) or only for reading
+     */
+    static LogSegment open(Path path, long number, boolean writable) throws IOException {
+        int capacity = (int) Files.size(path);
+        LogSegment segment = new LogSegment(number, path, capacity);
+        MappedByteBuffer mapped = segment.map(writable);
+        segment.size = segment.scan(mapped);
+        segment.forcedSize = segment.size;
+        if (writable) {
+            if (segment.size + HEADER_BYTES <= capacity && mapped.getInt(segment.size) != 0) {
+                for (int i = segment.size; i < capacity; i++) {
+                    mapped.put(i, (byte) 0);
+                }
+                mapped.force();
+            }
+            segment.buffer = mapped;
+        } else {
+            segment.sealedBuffer = mapped;
+        }
+        return segment;
+    }
+    
+    /**
+     * @return True if a record with a body of the given size fits in the remaining space
+     */
+    boolean fits(int bodyLength) {
+        return size + HEADER_BYTES + bodyLength <= capacity;
+    }
+    
+    /**
+     * Copy a record into the mapped file; the caller serializes appends and index lookups
+     */
+    void append(byte[] body, long timestamp, String key) {
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        int offset = size;
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        buffer.put(offset + HEADER_BYTES, body);
+        buffer.putInt(offset, body.length);
+        size = offset + HEADER_BYTES + body.length;
+        indexRecord(offset, timestamp, key);
+    }
+    
+    /**
+     * Flush the records appended since the last call to disk. Safe to call concurrently
+     * with appends; records appended meanwhile are left for the next call.
+     * @return Bytes flushed
+     */
+    synchronized int force() {
+        MappedByteBuffer mapped = buffer;
+        int end = size;
+        int start = forcedSize;
+        if (mapped == null || end == start) {
+            return 0;
+        }
+        mapped.force(start, end - start);
+        forcedSize = end;
+        return end - start;
+    }
+    
+    /**
+     * Flush and stop appending; the mapping stays in use for reads
+     */
+    synchronized void seal() {
+        force();
+        sealedBuffer = buffer;
+        buffer = null;
+    }
+    
+    /**
+     * Find where a range scan of this segment starts; the caller serializes this with appends
+     * @param fromTime Start of the range, inclusive
+     * @param toTime End of the range, inclusive
+     * @param key Only records with this key are wanted, or null for all
+     * @return Offset of the first record to read, or -1 if the segment holds no matching record
+     */
+    int startOffset(long fromTime, long toTime, String key) {
+        if (size == 0 || fromTime > maxTime || toTime < minTime || (key != null && !keys.contains(key))) {
+            return -1;
+        }
+        return startOffset(fromTime);
+    }
+    
+    /**
+     * @return A view of the records; every view shares the segment's one mapping
+     */
+    ByteBuffer view() {
+        MappedByteBuffer mapped = buffer;
+        return (mapped != null ? mapped : sealedBuffer).duplicate();
+    }
+    
+    /**
+     * Visit the records with timestamps in a range, oldest first
+     * @param view Segment contents from {@link #view()}
+     * @param offset Offset from {@link #startOffset(long, long, String)}
+     * @param end Offset where the written data ended when the scan was planned
+     * @param fromTime Start of the range, inclusive
+     * @param toTime End of the range, inclusive
+     * @param key UTF-8 bytes of the key to visit, or null for all records
+     * @param visitor Receives each record body
+     */
+    static void read(ByteBuffer view, int offset, int end, long fromTime, long toTime, byte[] key,
+                     Consumer<ByteBuffer> visitor) {
+        while (offset + HEADER_BYTES <= end) {
+            int length = view.getInt(offset);
+            ByteBuffer body = view.slice(offset + HEADER_BYTES, length);
+            long timestamp = ObservationCodec.timestampOf(body);
+            if (timestamp > toTime) {
+                return;
+            }
+            if (timestamp >= fromTime && (key == null || ObservationCodec.hasKey(body, key))) {
+                visitor.accept(body);
+            }
+            offset += HEADER_BYTES + length;
+        }
+    }
+    
+    /**
+     * Offset of the last indexed record older than the given time, or 0
+     */
+    private int startOffset(long time) {
+        int low = 0;
+        int high = indexCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (indexTimes[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low == 0 ? 0 : indexOffsets[low - 1];
+    }
+    
+    /**
+     * Validate and index the records from the start of the file
+     * @return Offset just after the last valid record
+     */
+    private int scan(ByteBuffer view) {
+        CRC32C crc = new CRC32C();
+        int offset = 0;
+        while (offset + HEADER_BYTES <= capacity) {
+            int length = view.getInt(offset);
+            if (length <= 0 || offset + HEADER_BYTES + length > capacity) {
+                break;
+            }
+            ByteBuffer body = view.slice(offset + HEADER_BYTES, length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != view.getInt(offset + 4)) {
+                break;
+            }
+            indexRecord(offset, ObservationCodec.timestampOf(body), ObservationCodec.keyOf(body));
+            offset += HEADER_BYTES + length;
+        }
+        return offset;
+    }
+    
+    private void indexRecord(int offset, long timestamp, String key) {
+        minTime = Math.min(minTime, timestamp);
+        maxTime = Math.max(maxTime, timestamp);
+        keys.add(key);
+        recordCount++;
+        if (indexCount == 0 || offset - indexOffsets[indexCount - 1] >= INDEX_INTERVAL_BYTES) {
+            if (indexCount == indexTimes.length) {
+                indexTimes = Arrays.copyOf(indexTimes, indexCount * 2);
+                indexOffsets = Arrays.copyOf(indexOffsets, indexCount * 2);
+            }
+            indexTimes[indexCount] = timestamp;
+            indexOffsets[indexCount] = offset;
+            indexCount++;
+        }
+    }
+    
+    private MappedByteBuffer map(boolean writable) throws IOException {
+        try (FileChannel channel = writable
+                ? FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, capacity);
+        }
+    }
+    
+    static String fileName(long number) {
+        return String.format("observations-%010d.log", number);
+    }
+    
+    long getNumber() {
+        return number;
+    }
+    
+    Path getPath() {
+        return path;
+    }
+    
+    int getSize() {
+        return size;
+    }
+    
+    int getRecordCount() {
+        return recordCount;
+    }
+    
+    long getMaxTime() {
+        return maxTime;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,200 @@
+package com.weathernews.persistence;
+
+import com.weathernews.model.Location;
+import com.weathernews.model.NewsArticle;
+import com.weathernews.model.Weather;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Binary encoding of log record bodies: kind (1 byte), timestamp (8 bytes, epoch millis),
+ * key, then the fields of the observation in declaration order. Strings are written as a
+ * 4-byte UTF-8 length (-1 for null) followed by the bytes.
+ */
+final class ObservationCodec {
+    private static final long NO_TIME = Long.MIN_VALUE;
+    
+    private ObservationCodec() {}
+    
+    /**
+     * @return The encoded body of a record
+     */
+    static byte[] encode(ObservationLog.Kind kind, long timestamp, String key, Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(kind.code);
+            out.writeLong(timestamp);
+            writeString(out, key);
+            switch (kind) {
+                case WEATHER:
+                    writeWeather(out, (Weather) value);
+                    break;
+                case LOCATION:
+                    writeLocation(out, (Location) value);
+                    break;
+                case NEWS:
+                    writeArticle(out, (NewsArticle) value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown kind: " + kind);
+            }
+        } catch (IOException e) {
+            // Writing to a byte array does not fail
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * Decode a whole record body
+     * @param body Buffer positioned at the start of the body
+     * @return The entry
+     */
+    static ObservationLog.Entry decode(ByteBuffer body) {
+        ObservationLog.Kind kind = ObservationLog.Kind.of(body.get());
+        long timestamp = body.getLong();
+        String key = readString(body);
+        Object value;
+        switch (kind) {
+            case WEATHER:
+                value = readWeather(body);
+                break;
+            case LOCATION:
+                value = readLocation(body);
+                break;
+            default:
+                value = readArticle(body);
+                break;
+        }
+        return new ObservationLog.Entry(kind, timestamp, key, value);
+    }
+    
+    /**
+     * @param body Buffer positioned at the start of a body
+     * @return The record's timestamp, without decoding the rest
+     */
+    static long timestampOf(ByteBuffer body) {
+        return body.getLong(body.position() + 1);
+    }
+    
+    /**
+     * @param body Buffer positioned at the start of a body
+     * @return The record's key, without decoding the observation
+     */
+    static String keyOf(ByteBuffer body) {
+        ByteBuffer view = body.duplicate();
+        view.position(body.position() + 9);
+        return readString(view);
+    }
+    
+    /**
+     * Compare a record's key without decoding it
+     * @param body Buffer positioned at the start of a body
+     * @param key UTF-8 bytes of the key to look for
+     * @return True if the record has this key
+     */
+    static boolean hasKey(ByteBuffer body, byte[] key) {
+        int start = body.position() + 9;
+        return body.getInt(start) == key.length
+                && body.slice(start + 4, key.length).mismatch(ByteBuffer.wrap(key)) == -1;
+    }
+    
+    private static void writeWeather(DataOutputStream out, Weather weather) throws IOException {
+        writeString(out, weather.getLocation());
+        out.writeDouble(weather.getTemperature());
+        out.writeDouble(weather.getFeelsLike());
+        writeString(out, weather.getDescription());
+        writeString(out, weather.getMainCondition());
+        out.writeInt(weather.getHumidity());
+        out.writeDouble(weather.getWindSpeed());
+        out.writeInt(weather.getWindDirection());
+        out.writeDouble(weather.getPressure());
+        out.writeInt(weather.getVisibility());
+        writeString(out, weather.getIcon());
+        out.writeInt(weather.getCityId());
+    }
+    
+    private static Weather readWeather(ByteBuffer in) {
+        Weather weather = new Weather();
+        weather.setLocation(readString(in));
+        weather.setTemperature(in.getDouble());
+        weather.setFeelsLike(in.getDouble());
+        weather.setDescription(readString(in));
+        weather.setMainCondition(readString(in));
+        weather.setHumidity(in.getInt());
+        weather.setWindSpeed(in.getDouble());
+        weather.setWindDirection(in.getInt());
+        weather.setPressure(in.getDouble());
+        weather.setVisibility(in.getInt());
+        weather.setIcon(readString(in));
+        weather.setCityId(in.getInt());
+        return weather;
+    }
+    
+    private static void writeLocation(DataOutputStream out, Location location) throws IOException {
+        writeString(out, location.getZipcode());
+        writeString(out, location.getCity());
+        writeString(out, location.getState());
+        out.writeDouble(location.getLatitude());
+        out.writeDouble(location.getLongitude());
+    }
+    
+    private static Location readLocation(ByteBuffer in) {
+        return new Location(readString(in), readString(in), readString(in), in.getDouble(), in.getDouble());
+    }
+    
+    private static void writeArticle(DataOutputStream out, NewsArticle article) throws IOException {
+        writeString(out, article.getTitle());
+        writeString(out, article.getDescription());
+        writeString(out, article.getContent());
+        writeString(out, article.getSource());
+        writeString(out, article.getAuthor());
+        writeString(out, article.getUrl());
+        writeString(out, article.getUrlToImage());
+        LocalDateTime published = article.getPublishedAt();
+        out.writeLong(published != null ? published.toEpochSecond(ZoneOffset.UTC) : NO_TIME);
+    }
+    
+    private static NewsArticle readArticle(ByteBuffer in) {
+        NewsArticle article = new NewsArticle();
+        article.setTitle(readString(in));
+        article.setDescription(readString(in));
+        article.setContent(readString(in));
+        article.setSource(readString(in));
+        article.setAuthor(readString(in));
+        article.setUrl(readString(in));
+        article.setUrlToImage(readString(in));
+        long published = in.getLong();
+        if (published != NO_TIME) {
+            article.setPublishedAt(LocalDateTime.ofEpochSecond(published, 0, ZoneOffset.UTC));
+        }
+        return article;
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,404 @@
+package com.weathernews.persistence;
+
+import com.weathernews.model.Location;
+import com.weathernews.model.NewsArticle;
+import com.weathernews.model.Weather;
+import com.weathernews.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Durable, append-only log of fetched weather, locations and news articles.
+ * Records are written in a compact binary form into fixed-size segment files mapped into
+ * memory, so an append is an in-memory copy under a short lock. Appended records are
+ * group-committed: a background thread flushes them to disk every commit interval, or as
+ * soon as a batch of records is pending, so one disk flush covers many records.
+ *
+ * Every record has a key (the zipcode for weather and locations, the query for news) and a
+ * timestamp assigned at append time that never decreases. A sparse index per segment,
+ * rebuilt from the files on startup, lets {@link #scan} and {@link #replay} skip segments
+ * without the key or outside the time range and start mid-segment. Records torn by a crash
+ * fail their checksum and are dropped on startup, along with anything after them.
+ *
+ * Appends never throw: a failure to write is logged and counted, so persistence problems
+ * do not fail user requests.
+ */
+public class ObservationLog {
+    private static final Logger logger = LoggerFactory.getLogger(ObservationLog.class);
+    private static final String FILE_PREFIX = "observations-";
+    private static final String FILE_SUFFIX = ".log";
+    
+    /**
+     * Kind of observation stored in a record
+     */
+    public enum Kind {
+        WEATHER(1), LOCATION(2), NEWS(3);
+        
+        final byte code;
+        
+        Kind(int code) {
+            this.code = (byte) code;
+        }
+        
+        static Kind of(byte code) {
+            for (Kind kind : values()) {
+                if (kind.code == code) {
+                    return kind;
+                }
+            }
+            throw new IllegalArgumentException("Unknown record kind: " + code);
+        }
+    }
+    
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final List<LogSegment> segments = new ArrayList<>();
+    private LogSegment active;
+    private long lastTimestamp;
+    private int pendingRecords;
+    private int commitBatchRecords = Integer.MAX_VALUE;
+    private boolean closed;
+    private ScheduledExecutorService committer;
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder appendedBytes = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    
+    /**
+     * Open the log in a directory, recovering the segments already there
+     * @param directory Directory holding the segment files; created if missing
+     * @param segmentBytes Size of each segment file
+     * @param maxSegments Segments kept before the oldest is deleted, or 0 to keep all
+     * @throws IOException if the directory or segments cannot be opened
+     */
+    public ObservationLog(Path directory, int segmentBytes, int maxSegments) throws IOException {
+        if (segmentBytes < 4096 || maxSegments < 0) {
+            throw new IllegalArgumentException("Segments must be at least 4 KB and the segment limit non-negative");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        Files.createDirectories(directory);
+        
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length())), path);
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring unexpected file in observation log directory: {}", path);
+                }
+            }
+        }
+        for (var file : files.entrySet()) {
+            boolean newest = file.getKey().equals(files.lastKey());
+            LogSegment segment = LogSegment.open(file.getValue(), file.getKey(), newest);
+            segments.add(segment);
+            lastTimestamp = Math.max(lastTimestamp, segment.getMaxTime());
+        }
+        if (segments.isEmpty()) {
+            segments.add(LogSegment.create(directory, 0, segmentBytes));
+        }
+        active = segments.get(segments.size() - 1);
+        deleteOldSegments();
+        logger.info("Observation log opened: {}", this);
+    }
+    
+    /**
+     * Start group-committing appended records in the background
+     * @param interval Maximum time a record stays unflushed
+     * @param unit Unit of interval
+     * @param batchRecords Flush early once this many records are pending
+     */
+    public synchronized void start(long interval, TimeUnit unit, int batchRecords) {
+        if (committer != null) {
+            throw new IllegalStateException("Observation log already started");
+        }
+        if (interval <= 0 || batchRecords <= 0) {
+            throw new IllegalArgumentException("Commit interval and batch size must be positive");
+        }
+        this.commitBatchRecords = batchRecords;
+        this.committer = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("observation-log"));
+        committer.scheduleWithFixedDelay(this::commit, interval, interval, unit);
+    }
+    
+    /**
+     * @param key The zipcode, or the location name if there is none
+     * @param weather The fetched observation
+     * @return True if the record was appended
+     */
+    public boolean append(String key, Weather weather) {
+        return append(Kind.WEATHER, key, weather);
+    }
+    
+    /**
+     * @param key The zipcode, or "city,state" for city lookups
+     * @param location The resolved location
+     * @return True if the record was appended
+     */
+    public boolean append(String key, Location location) {
+        return append(Kind.LOCATION, key, location);
+    }
+    
+    /**
+     * @param key The news query
+     * @param article The fetched article
+     * @return True if the record was appended
+     */
+    public boolean append(String key, NewsArticle article) {
+        return append(Kind.NEWS, key, article);
+    }
+    
+    private boolean append(Kind kind, String key, Object value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Key and value cannot be null");
+        }
+        // Encode outside the lock; only the timestamp may need patching once ordered
+        long now = System.currentTimeMillis();
+        byte[] body = ObservationCodec.encode(kind, now, key, value);
+        if (LogSegment.HEADER_BYTES + body.length > segmentBytes) {
+            failures.increment();
+            logger.warn("Observation for {} is larger than a log segment ({} bytes), not logged", key, body.length);
+            return false;
+        }
+        
+        ScheduledExecutorService commitNow = null;
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            long timestamp = Math.max(now, lastTimestamp);
+            if (timestamp != now) {
+                ByteBuffer.wrap(body).putLong(1, timestamp);
+            }
+            if (!active.fits(body.length)) {
+                try {
+                    roll();
+                } catch (IOException e) {
+                    failures.increment();
+                    logger.warn("Could not start a new observation log segment: {}", e.getMessage());
+                    return false;
+                }
+            }
+            active.append(body, timestamp, key);
+            lastTimestamp = timestamp;
+            if (++pendingRecords >= commitBatchRecords) {
+                pendingRecords = 0;
+                commitNow = committer;
+            }
+        }
+        appended.increment();
+        appendedBytes.add(LogSegment.HEADER_BYTES + body.length);
+        if (commitNow != null) {
+            try {
+                commitNow.execute(this::commit);
+            } catch (RejectedExecutionException e) {
+                // Closed meanwhile; close() commits everything
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Flush all appended records to disk
+     */
+    public void commit() {
+        LogSegment segment;
+        synchronized (this) {
+            segment = active;
+            pendingRecords = 0;
+        }
+        try {
+            if (segment.force() > 0) {
+                commits.increment();
+            }
+        } catch (RuntimeException e) {
+            // MappedByteBuffer.force reports I/O errors as UncheckedIOException
+            failures.increment();
+            logger.warn("Observation log commit failed: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Seal the full active segment, start the next one and drop segments beyond the limit
+     */
+    private void roll() throws IOException {
+        active.seal();
+        commits.increment();
+        active = LogSegment.create(directory, active.getNumber() + 1, segmentBytes);
+        segments.add(active);
+        deleteOldSegments();
+    }
+    
+    private void deleteOldSegments() throws IOException {
+        while (maxSegments > 0 && segments.size() > maxSegments) {
+            LogSegment oldest = segments.remove(0);
+            Files.deleteIfExists(oldest.getPath());
+            logger.info("Deleted observation log segment {}", oldest.getPath().getFileName());
+        }
+    }
+    
+    /**
+     * Read the records of one key in a time range
+     * @param key The key the records were appended with
+     * @param fromMillis Start of the range, inclusive, in epoch milliseconds
+     * @param toMillis End of the range, inclusive, in epoch milliseconds
+     * @return The matching records, oldest first
+     * @throws IOException if a segment cannot be read
+     */
+    public List<Entry> scan(String key, long fromMillis, long toMillis) throws IOException {
+        if (key == null) {
+            throw new IllegalArgumentException("Key cannot be null");
+        }
+        List<Entry> entries = new ArrayList<>();
+        read(key, fromMillis, toMillis, entries::add);
+        return entries;
+    }
+    
+    /**
+     * Visit all records in a time range in the order they were appended, e.g. to rebuild
+     * in-memory state after a restart
+     * @param fromMillis Start of the range, inclusive, in epoch milliseconds
+     * @param toMillis End of the range, inclusive, in epoch milliseconds
+     * @param visitor Receives each record
+     * @return Number of records visited
+     * @throws IOException if a segment cannot be read
+     */
+    public long replay(long fromMillis, long toMillis, Consumer<Entry> visitor) throws IOException {
+        LongAdder visited = new LongAdder();
+        read(null, fromMillis, toMillis, entry -> {
+            visited.increment();
+            visitor.accept(entry);
+        });
+        return visited.sum();
+    }
+    
+    private void read(String key, long fromMillis, long toMillis, Consumer<Entry> visitor) throws IOException {
+        // Plan under the lock, then read the mapped files without holding it
+        List<LogSegment> planned = new ArrayList<>();
+        List<int[]> ranges = new ArrayList<>();
+        synchronized (this) {
+            for (LogSegment segment : segments) {
+                int start = segment.startOffset(fromMillis, toMillis, key);
+                if (start >= 0) {
+                    planned.add(segment);
+                    ranges.add(new int[] {start, segment.getSize()});
+                }
+            }
+        }
+        byte[] keyBytes = key != null ? key.getBytes(StandardCharsets.UTF_8) : null;
+        for (int i = 0; i < planned.size(); i++) {
+            int[] range = ranges.get(i);
+            LogSegment.read(planned.get(i).view(), range[0], range[1], fromMillis, toMillis, keyBytes,
+                    body -> visitor.accept(ObservationCodec.decode(body)));
+        }
+    }
+    
+    /**
+     * Flush outstanding records and stop; later appends are ignored
+     */
+    public void close() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            executor = committer;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        commit();
+        synchronized (this) {
+            active.seal();
+        }
+    }
+    
+    @Override
+    public synchronized String toString() {
+        long records = 0;
+        for (LogSegment segment : segments) {
+            records += segment.getRecordCount();
+        }
+        return String.format("ObservationLog[dir=%s, segments=%d, records=%d, appended=%d (%.1fMB), commits=%d, failures=%d]",
+                directory, segments.size(), records, appended.sum(), appendedBytes.sum() / (1024.0 * 1024.0),
+                commits.sum(), failures.sum());
+    }
+    
+    /**
+     * One record read back from the log
+     */
+    public static class Entry {
+        private final Kind kind;
+        private final long timestamp;
+        private final String key;
+        private final Object value;
+        
+        Entry(Kind kind, long timestamp, String key, Object value) {
+            this.kind = kind;
+            this.timestamp = timestamp;
+            this.key = key;
+            this.value = value;
+        }
+        
+        public Kind getKind() {
+            return kind;
+        }
+        
+        /**
+         * @return Time the record was appended, in epoch milliseconds
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+        
+        public String getKey() {
+            return key;
+        }
+        
+        /**
+         * @return The observation, or null if the record holds another kind
+         */
+        public Weather getWeather() {
+            return kind == Kind.WEATHER ? (Weather) value : null;
+        }
+        
+        /**
+         * @return The location, or null if the record holds another kind
+         */
+        public Location getLocation() {
+            return kind == Kind.LOCATION ? (Location) value : null;
+        }
+        
+        /**
+         * @return The article, or null if the record holds another kind
+         */
+        public NewsArticle getArticle() {
+            return kind == Kind.NEWS ? (NewsArticle) value : null;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%s[%s @ %d]", kind, key, timestamp);
+        }
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,126 @@
+package com.weathernews.prefetch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Approximate request counts per zipcode and the current top N.
+ * Counts live in a fixed-size Count-Min sketch (four rows of counters) instead of a
+ * map entry per zipcode, so memory does not grow with the number of distinct zipcodes;
+ * only the top N candidates are kept by key. Counters are halved after every
+ * 10 × width requests, so popularity follows recent traffic.
+ */
+public class PopularityTracker {
+    private static final int DEPTH = 4;
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L
+    };
+    
+    private final int width;
+    private final int mask;
+    private final int topSize;
+    private final int sampleSize;
+    private final AtomicIntegerArray counters;
+    private final AtomicInteger additions = new AtomicInteger();
+    private final Map<Integer, Integer> top = new HashMap<>();
+    
+    /**
+     * @param width Counters per sketch row, rounded up to a power of two; more counters mean
+     *              fewer collisions between unpopular and popular keys
+     * @param topSize Number of most popular keys to track
+     */
+    public PopularityTracker(int width, int topSize) {
+        if (width <= 0 || topSize <= 0) {
+            throw new IllegalArgumentException("Width and top size must be positive");
+        }
+        this.width = Integer.highestOneBit(Math.max(width - 1, 1)) << 1;
+        this.mask = this.width - 1;
+        this.topSize = topSize;
+        this.sampleSize = this.width * 10;
+        this.counters = new AtomicIntegerArray(DEPTH * this.width);
+    }
+    
+    /**
+     * Count one request for a key
+     * @param key The key, e.g. a packed zipcode
+     */
+    public void record(int key) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.incrementAndGet(row * width + indexOf(key, row)));
+        }
+        if (additions.incrementAndGet() >= sampleSize) {
+            age();
+        }
+        offer(key, estimate);
+    }
+    
+    /**
+     * @param key The key
+     * @return Estimated recent request count; never below the true count, may be above it
+     */
+    public int estimate(int key) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters.get(row * width + indexOf(key, row)));
+        }
+        return estimate;
+    }
+    
+    /**
+     * @return The most popular keys, most requested first
+     */
+    public synchronized List<Integer> getTop() {
+        List<Integer> keys = new ArrayList<>(top.keySet());
+        keys.sort((a, b) -> Integer.compare(top.get(b), top.get(a)));
+        return keys;
+    }
+    
+    private synchronized void offer(int key, int estimate) {
+        if (top.containsKey(key) || top.size() < topSize) {
+            top.put(key, estimate);
+            return;
+        }
+        
+        Integer coldest = null;
+        int coldestCount = Integer.MAX_VALUE;
+        for (Map.Entry<Integer, Integer> entry : top.entrySet()) {
+            if (entry.getValue() < coldestCount) {
+                coldest = entry.getKey();
+                coldestCount = entry.getValue();
+            }
+        }
+        if (estimate > coldestCount) {
+            top.remove(coldest);
+            top.put(key, estimate);
+        }
+    }
+    
+    /**
+     * Halve all counters so old traffic fades out
+     */
+    private synchronized void age() {
+        if (additions.get() < sampleSize) {
+            return;
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, counters.get(i) >>> 1);
+        }
+        top.replaceAll((key, count) -> count >>> 1);
+        additions.set(0);
+    }
+    
+    private int indexOf(int key, int row) {
+        long hash = (key + SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+        return (int) (hash >>> 32) & mask;
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return String.format("PopularityTracker[width=%d, tracked=%d/%d]", width, top.size(), topSize);
+    }
+} 
\ No newline at end of file
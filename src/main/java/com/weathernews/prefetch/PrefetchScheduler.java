@@ -0,0 +1,128 @@
+package com.weathernews.prefetch;
+
+import com.weathernews.http.CircuitOpenException;
+import com.weathernews.http.QuotaExceededException;
+import com.weathernews.http.RequestPriority;
+import com.weathernews.model.Location;
+import com.weathernews.service.NewsService;
+import com.weathernews.service.WeatherService;
+import com.weathernews.service.ZipcodeService;
+import com.weathernews.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the weather and news of the most requested zipcodes warm.
+ * At a fixed interval, every zipcode in the {@link PopularityTracker}'s top N whose cached
+ * weather or news expires within the lead time is refreshed in the background, so popular
+ * zipcodes never see a cold miss.
+ *
+ * Refreshes run at {@link RequestPriority#PREFETCH}, so they only use spare upstream quota.
+ * When a quota turns a refresh away or a circuit breaker is open, the rest of the round is
+ * skipped until the next interval, leaving the capacity to interactive requests.
+ */
+public class PrefetchScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(PrefetchScheduler.class);
+    
+    private final PopularityTracker tracker;
+    private final ZipcodeService zipcodeService;
+    private final WeatherService weatherService;
+    private final NewsService newsService;
+    private final int maxArticles;
+    private final LongAdder rounds = new LongAdder();
+    private final LongAdder throttledRounds = new LongAdder();
+    private final LongAdder weatherRefreshes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private ScheduledExecutorService scheduler;
+    
+    /**
+     * @param tracker Popularity of the zipcodes
+     * @param zipcodeService Resolves zipcodes (usually from its cache)
+     * @param weatherService Weather to keep warm
+     * @param newsService News to keep warm
+     * @param maxArticles Articles per location, as requested by the application
+     */
+    public PrefetchScheduler(PopularityTracker tracker, ZipcodeService zipcodeService,
+                             WeatherService weatherService, NewsService newsService, int maxArticles) {
+        this.tracker = tracker;
+        this.zipcodeService = zipcodeService;
+        this.weatherService = weatherService;
+        this.newsService = newsService;
+        this.maxArticles = maxArticles;
+    }
+    
+    /**
+     * Start refreshing in the background
+     * @param interval Time between rounds
+     * @param lead Refresh entries expiring within this time; should exceed the interval
+     * @param unit Unit of interval and lead
+     */
+    public synchronized void start(long interval, long lead, TimeUnit unit) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Prefetch scheduler already started");
+        }
+        if (interval <= 0 || lead <= 0) {
+            throw new IllegalArgumentException("Interval and lead must be positive");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("prefetch"));
+        scheduler.scheduleWithFixedDelay(
+                RequestPriority.wrap(RequestPriority.PREFETCH, () -> runRound(lead, unit)),
+                interval, interval, unit);
+        logger.info("Prefetching the top zipcodes every {} {} ({} {} ahead of expiry)",
+                interval, unit, lead, unit);
+    }
+    
+    /**
+     * Refresh the current top zipcodes once
+     * @param lead Refresh entries expiring within this time
+     * @param unit Unit of lead
+     */
+    void runRound(long lead, TimeUnit unit) {
+        rounds.increment();
+        List<Integer> top = tracker.getTop();
+        for (int zipKey : top) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            String zipcode = String.format("%05d", zipKey);
+            try {
+                Location location = zipcodeService.getLocationByZipcode(zipcode);
+                if (weatherService.refreshWeather(location, lead, unit)) {
+                    weatherRefreshes.increment();
+                }
+                newsService.refreshLocalNews(location, maxArticles, lead, unit);
+            } catch (QuotaExceededException | CircuitOpenException e) {
+                // Interactive traffic needs the capacity, or the upstream is struggling
+                throttledRounds.increment();
+                logger.debug("Prefetch round stopped at {}: {}", zipcode, e.getMessage());
+                return;
+            } catch (IOException | RuntimeException e) {
+                failures.increment();
+                logger.debug("Prefetch failed for {}: {}", zipcode, e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Stop refreshing
+     */
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("PrefetchScheduler[rounds=%d, throttled=%d, weatherRefreshes=%d, failures=%d, %s]",
+                rounds.sum(), throttledRounds.sum(), weatherRefreshes.sum(), failures.sum(), tracker);
+    }
+} 
\ No newline at end of file
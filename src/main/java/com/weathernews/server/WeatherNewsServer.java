@@ -0,0 +1,194 @@
+package com.weathernews.server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.weathernews.http.CircuitOpenException;
+import com.weathernews.model.Location;
+import com.weathernews.service.NewsService;
+import com.weathernews.service.WeatherService;
+import com.weathernews.service.ZipcodeService;
+import com.weathernews.util.JsonSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Embedded HTTP server exposing the services as JSON endpoints keyed by zipcode:
+ * <pre>
+ * GET /location?zip=90210
+ * GET /weather?zip=90210
+ * GET /news?zip=90210&amp;max=5
+ * </pre>
+ * The zipcode may also be given as a path segment, e.g. /weather/90210.
+ * Every request runs on its own virtual thread, so the blocking service calls
+ * scale with concurrent requests without a dedicated thread pool per upstream.
+ */
+public class WeatherNewsServer {
+    private static final Logger logger = LoggerFactory.getLogger(WeatherNewsServer.class);
+    private static final int MAX_ARTICLES_LIMIT = 100;
+    
+    private final ZipcodeService zipcodeService;
+    private final WeatherService weatherService;
+    private final NewsService newsService;
+    private final int defaultMaxArticles;
+    private final Gson gson = JsonSupport.createGson();
+    
+    private HttpServer server;
+    private ExecutorService executor;
+    
+    public WeatherNewsServer(ZipcodeService zipcodeService, WeatherService weatherService,
+                             NewsService newsService, int defaultMaxArticles) {
+        this.zipcodeService = zipcodeService;
+        this.weatherService = weatherService;
+        this.newsService = newsService;
+        this.defaultMaxArticles = defaultMaxArticles;
+    }
+    
+    /**
+     * Start listening for requests
+     * @param port TCP port to bind; 0 picks a free port
+     * @throws IOException if the port cannot be bound
+     */
+    public synchronized void start(int port) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(executor);
+        server.createContext("/location", exchange -> handle(exchange, "/location", (zipcode, params) ->
+                zipcodeService.getLocationByZipcode(zipcode)));
+        server.createContext("/weather", exchange -> handle(exchange, "/weather", (zipcode, params) ->
+                weatherService.getWeatherByLocation(zipcodeService.getLocationByZipcode(zipcode))));
+        server.createContext("/news", exchange -> handle(exchange, "/news", (zipcode, params) -> {
+            Location location = zipcodeService.getLocationByZipcode(zipcode);
+            return newsService.getLocalNews(location, maxArticles(params));
+        }));
+        server.start();
+        logger.info("HTTP server listening on port {}", getPort());
+    }
+    
+    /**
+     * @return The bound port
+     */
+    public synchronized int getPort() {
+        if (server == null) {
+            throw new IllegalStateException("Server not started");
+        }
+        return server.getAddress().getPort();
+    }
+    
+    /**
+     * Stop accepting requests and wait briefly for in-flight ones to finish
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(2);
+            executor.shutdown();
+            server = null;
+            logger.info("HTTP server stopped");
+        }
+    }
+    
+    private void handle(HttpExchange exchange, String context, Endpoint endpoint) throws IOException {
+        try (exchange) {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                sendError(exchange, 405, "Method not allowed");
+                return;
+            }
+            
+            Map<String, String> params = queryParameters(exchange.getRequestURI().getRawQuery());
+            String zipcode = params.get("zip");
+            String path = exchange.getRequestURI().getPath();
+            if (zipcode == null && path.length() > context.length() + 1) {
+                zipcode = path.substring(context.length() + 1);
+            }
+            if (zipcode == null || zipcode.isBlank()) {
+                sendError(exchange, 400, "Missing zipcode; use ?zip=12345");
+                return;
+            }
+            
+            try {
+                send(exchange, 200, gson.toJson(endpoint.handle(zipcode.trim(), params)));
+            } catch (IllegalArgumentException e) {
+                boolean notFound = e.getMessage() != null && e.getMessage().startsWith("Zipcode not found");
+                sendError(exchange, notFound ? 404 : 400, e.getMessage());
+            } catch (CircuitOpenException e) {
+                sendError(exchange, 503, e.getMessage());
+            } catch (IOException e) {
+                logger.warn("Upstream request failed for {} {}: {}", context, zipcode, e.getMessage());
+                sendError(exchange, 502, "Upstream request failed: " + e.getMessage());
+            } catch (RuntimeException e) {
+                logger.error("Unexpected error handling {} {}", context, zipcode, e);
+                sendError(exchange, 500, "Internal server error");
+            }
+        }
+    }
+    
+    private int maxArticles(Map<String, String> params) {
+        String max = params.get("max");
+        if (max == null) {
+            return defaultMaxArticles;
+        }
+        try {
+            int value = Integer.parseInt(max);
+            if (value < 1 || value > MAX_ARTICLES_LIMIT) {
+                throw new IllegalArgumentException("max must be between 1 and " + MAX_ARTICLES_LIMIT);
+            }
+            return value;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("max must be a number");
+        }
+    }
+    
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        JsonObject error = new JsonObject();
+        error.addProperty("status", status);
+        error.addProperty("error", message);
+        send(exchange, status, gson.toJson(error));
+    }
+    
+    private void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+    
+    private static Map<String, String> queryParameters(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.putIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+    
+    /**
+     * Produces the response object for a zipcode
+     */
+    @FunctionalInterface
+    private interface Endpoint {
+        Object handle(String zipcode, Map<String, String> params) throws IOException;
+    }
+} 
\ No newline at end of file
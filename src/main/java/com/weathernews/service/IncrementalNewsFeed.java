@@ -0,0 +1,142 @@
+package com.weathernews.service;
+
+import com.weathernews.model.NewsArticle;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-query article windows for repeatedly polled news queries.
+ * The first poll of a query fetches the full page; later polls only ask for articles
+ * published at or after the newest one seen (the watermark, sent as the API's "from"
+ * parameter). New articles are merged into a bounded window, newest first, and
+ * deduplicated by URL, so each poll only transfers and parses the delta.
+ */
+class IncrementalNewsFeed {
+    private static final Comparator<NewsArticle> NEWEST_FIRST = Comparator.comparing(
+            NewsArticle::getPublishedAt, Comparator.nullsFirst(Comparator.<LocalDateTime>naturalOrder())).reversed();
+    
+    private final int windowSize;
+    private final Map<String, QueryWindow> windows;
+    private final LongAdder polls = new LongAdder();
+    private final LongAdder incrementalPolls = new LongAdder();
+    private final LongAdder fetchedArticles = new LongAdder();
+    private final LongAdder duplicateArticles = new LongAdder();
+    
+    /**
+     * @param windowSize Articles kept per query
+     * @param maxQueries Queries tracked at once; the least recently polled one is dropped first
+     */
+    IncrementalNewsFeed(int windowSize, int maxQueries) {
+        if (windowSize <= 0 || maxQueries <= 0) {
+            throw new IllegalArgumentException("Window size and query count must be positive");
+        }
+        this.windowSize = windowSize;
+        this.windows = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, QueryWindow> eldest) {
+                return size() > maxQueries;
+            }
+        };
+    }
+    
+    /**
+     * Poll a query and merge the new articles into its window
+     * @param key Normalized query key
+     * @param url Request URL for the full page; "&amp;from=" is appended once a watermark exists
+     * @param limit Maximum number of articles to return
+     * @param fetcher Fetches and parses a URL
+     * @return The newest articles of the query's window
+     * @throws IOException if the request fails
+     */
+    List<NewsArticle> poll(String key, String url, int limit, Fetcher fetcher) throws IOException {
+        QueryWindow window;
+        synchronized (windows) {
+            window = windows.computeIfAbsent(key, ignored -> new QueryWindow());
+        }
+        
+        LocalDateTime watermark = window.getWatermark();
+        polls.increment();
+        List<NewsArticle> fetched;
+        if (watermark == null) {
+            fetched = fetcher.fetch(url);
+        } else {
+            incrementalPolls.increment();
+            fetched = fetcher.fetch(url + "&from=" + watermark.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        }
+        fetchedArticles.add(fetched.size());
+        return window.merge(fetched, limit);
+    }
+    
+    @Override
+    public String toString() {
+        int queries;
+        synchronized (windows) {
+            queries = windows.size();
+        }
+        return String.format("queries=%d, polls=%d (incremental %d), articles fetched=%d, duplicates=%d",
+                queries, polls.sum(), incrementalPolls.sum(), fetchedArticles.sum(), duplicateArticles.sum());
+    }
+    
+    /**
+     * Fetches and parses one news API URL
+     */
+    @FunctionalInterface
+    interface Fetcher {
+        List<NewsArticle> fetch(String url) throws IOException;
+    }
+    
+    /**
+     * Newest articles of one query and the newest publication time seen
+     */
+    private class QueryWindow {
+        private final List<NewsArticle> articles = new ArrayList<>();
+        private final Set<String> keys = new HashSet<>();
+        private LocalDateTime watermark;
+        
+        synchronized LocalDateTime getWatermark() {
+            return watermark;
+        }
+        
+        synchronized List<NewsArticle> merge(List<NewsArticle> fetched, int limit) {
+            boolean added = false;
+            for (NewsArticle article : fetched) {
+                if (!keys.add(dedupeKey(article))) {
+                    duplicateArticles.increment();
+                    continue;
+                }
+                articles.add(article);
+                added = true;
+                LocalDateTime published = article.getPublishedAt();
+                if (published != null && (watermark == null || published.isAfter(watermark))) {
+                    watermark = published;
+                }
+            }
+            
+            if (added) {
+                articles.sort(NEWEST_FIRST);
+                while (articles.size() > windowSize) {
+                    keys.remove(dedupeKey(articles.remove(articles.size() - 1)));
+                }
+            }
+            return Collections.unmodifiableList(new ArrayList<>(articles.subList(0, Math.min(limit, articles.size()))));
+        }
+    }
+    
+    /**
+     * Articles are identified by URL; the few without one fall back to their title
+     */
+    private static String dedupeKey(NewsArticle article) {
+        return article.getUrl() != null ? article.getUrl() : "title:" + article.getTitle();
+    }
+} 
\ No newline at end of file
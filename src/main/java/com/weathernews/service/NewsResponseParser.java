@@ -0,0 +1,191 @@
+package com.weathernews.service;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import com.weathernews.model.NewsArticle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Single-pass streaming parser for NewsAPI responses.
+ * Reads articles straight from the response stream into {@link NewsArticle} objects
+ * without building a JSON tree; fields that are not needed, including the large
+ * "content" field unless requested, are skipped without being materialized.
+ */
+class NewsResponseParser {
+    private static final Logger logger = LoggerFactory.getLogger(NewsResponseParser.class);
+    
+    private final boolean includeContent;
+    
+    /**
+     * @param includeContent Whether to keep the article "content" field
+     */
+    NewsResponseParser(boolean includeContent) {
+        this.includeContent = includeContent;
+    }
+    
+    /**
+     * Parse a NewsAPI response. A non-"ok" status or a malformed, empty or truncated document
+     * yields an empty list, matching the previous tree-based parser.
+     * @param reader Response body; not closed
+     * @return Articles that have a title, in response order
+     * @throws IOException if reading the stream fails
+     */
+    List<NewsArticle> parse(Reader reader) throws IOException {
+        List<NewsArticle> articles = new ArrayList<>();
+        String status = null;
+        
+        try {
+            JsonReader json = new JsonReader(reader);
+            json.beginObject();
+            while (json.hasNext()) {
+                switch (json.nextName()) {
+                    case "status":
+                        status = nextString(json);
+                        break;
+                    case "articles":
+                        readArticles(json, articles);
+                        break;
+                    default:
+                        json.skipValue();
+                }
+            }
+            json.endObject();
+        } catch (MalformedJsonException | EOFException | IllegalStateException e) {
+            logger.error("Failed to parse news response", e);
+            return Collections.emptyList();
+        }
+        
+        // The status may follow the articles, so it is only checked once the document is read
+        if (!"ok".equals(status)) {
+            logger.warn("News API returned error status: {}", status);
+            return Collections.emptyList();
+        }
+        
+        logger.info("Successfully parsed {} news articles", articles.size());
+        return articles;
+    }
+    
+    private void readArticles(JsonReader json, List<NewsArticle> articles) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return;
+        }
+        
+        json.beginArray();
+        while (json.hasNext()) {
+            if (json.peek() != JsonToken.BEGIN_OBJECT) {
+                json.skipValue();
+                continue;
+            }
+            NewsArticle article = readArticle(json);
+            
+            // Only add articles with at least a title
+            if (article.getTitle() != null && !article.getTitle().trim().isEmpty()) {
+                articles.add(article);
+            }
+        }
+        json.endArray();
+    }
+    
+    private NewsArticle readArticle(JsonReader json) throws IOException {
+        NewsArticle article = new NewsArticle();
+        
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "title":
+                    article.setTitle(nextString(json));
+                    break;
+                case "description":
+                    article.setDescription(nextString(json));
+                    break;
+                case "content":
+                    if (includeContent) {
+                        article.setContent(nextString(json));
+                    } else {
+                        json.skipValue();
+                    }
+                    break;
+                case "url":
+                    article.setUrl(nextString(json));
+                    break;
+                case "urlToImage":
+                    article.setUrlToImage(nextString(json));
+                    break;
+                case "author":
+                    article.setAuthor(nextString(json));
+                    break;
+                case "source":
+                    article.setSource(readSourceName(json));
+                    break;
+                case "publishedAt":
+                    article.setPublishedAt(parsePublishedAt(nextString(json)));
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+        
+        return article;
+    }
+    
+    private static String readSourceName(JsonReader json) throws IOException {
+        if (json.peek() != JsonToken.BEGIN_OBJECT) {
+            json.skipValue();
+            return null;
+        }
+        
+        String name = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            if ("name".equals(json.nextName())) {
+                name = nextString(json);
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        return name;
+    }
+    
+    private static LocalDateTime parsePublishedAt(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(value, DateTimeFormatter.ISO_DATE_TIME);
+        } catch (DateTimeParseException e) {
+            logger.warn("Failed to parse published date: {}", value);
+            return null;
+        }
+    }
+    
+    /**
+     * @return The next string or number value, or null for JSON null (other values are skipped)
+     */
+    private static String nextString(JsonReader json) throws IOException {
+        JsonToken token = json.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return json.nextString();
+        }
+        if (token == JsonToken.NULL) {
+            json.nextNull();
+        } else {
+            json.skipValue();
+        }
+        return null;
+    }
+} 
\ No newline at end of file
@@ -0,0 +1,263 @@
+package com.weathernews.service;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.weathernews.model.Location;
+import com.weathernews.model.Weather;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming decoder for OpenWeatherMap current weather payloads.
+ * Reads the response in one pass straight into a {@link Weather} without building a
+ * JSON tree. Only "main" and the first "weather" condition are required; "wind",
+ * "visibility", "sys", "name" and the station "id" are optional, and everything else
+ * is skipped.
+ */
+class WeatherResponseDecoder {
+    
+    /**
+     * Decode a current weather response
+     * @param reader Response body; not closed
+     * @param location The requested location used as the label, or null to label the
+     *                 observation with the station name and country from the payload
+     * @return The decoded observation
+     * @throws IOException if reading fails or the payload is malformed or incomplete
+     */
+    Weather decode(Reader reader, Location location) throws IOException {
+        Weather weather;
+        try {
+            weather = readObservation(new JsonReader(reader), location);
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Malformed weather response: " + e.getMessage(), e);
+        }
+        if (weather == null) {
+            throw new IOException("Weather response is missing main data or conditions");
+        }
+        return weather;
+    }
+    
+    /**
+     * Decode a multi-city group response ({"cnt": n, "list": [observation, ...]}).
+     * Observations without a station id or without main data are skipped.
+     * @param reader Response body; not closed
+     * @return Observations keyed by station id, labelled with the station name and country
+     * @throws IOException if reading fails or the payload is malformed
+     */
+    Map<Integer, Weather> decodeGroup(Reader reader) throws IOException {
+        Map<Integer, Weather> observations = new HashMap<>();
+        try {
+            JsonReader json = new JsonReader(reader);
+            json.beginObject();
+            while (json.hasNext()) {
+                if (!"list".equals(json.nextName()) || json.peek() != JsonToken.BEGIN_ARRAY) {
+                    json.skipValue();
+                    continue;
+                }
+                json.beginArray();
+                while (json.hasNext()) {
+                    if (json.peek() != JsonToken.BEGIN_OBJECT) {
+                        json.skipValue();
+                        continue;
+                    }
+                    Weather weather = readObservation(json, null);
+                    if (weather != null && weather.getCityId() != 0) {
+                        observations.put(weather.getCityId(), weather);
+                    }
+                }
+                json.endArray();
+            }
+            json.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Malformed weather group response: " + e.getMessage(), e);
+        }
+        return observations;
+    }
+    
+    /**
+     * Read one observation object
+     * @return The observation, or null if it has no main data or conditions
+     */
+    private static Weather readObservation(JsonReader json, Location location) throws IOException {
+        Weather weather = new Weather();
+        String name = null;
+        String country = null;
+        boolean hasMain = false;
+        boolean hasCondition = false;
+        
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "main":
+                    hasMain = readMain(json, weather);
+                    break;
+                case "weather":
+                    hasCondition = readCondition(json, weather);
+                    break;
+                case "wind":
+                    readWind(json, weather);
+                    break;
+                case "visibility":
+                    if (json.peek() == JsonToken.NUMBER) {
+                        weather.setVisibility((int) json.nextDouble());
+                    } else {
+                        json.skipValue();
+                    }
+                    break;
+                case "id":
+                    if (json.peek() == JsonToken.NUMBER) {
+                        weather.setCityId(json.nextInt());
+                    } else {
+                        json.skipValue();
+                    }
+                    break;
+                case "name":
+                    name = nextString(json);
+                    break;
+                case "sys":
+                    country = readCountry(json);
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+        
+        if (!hasMain || !hasCondition) {
+            return null;
+        }
+        
+        if (location != null) {
+            weather.setLocation(location.toString());
+        } else if (name != null && country != null) {
+            weather.setLocation(name + ", " + country);
+        } else {
+            weather.setLocation(name != null ? name : country);
+        }
+        return weather;
+    }
+    
+    private static boolean readMain(JsonReader json, Weather weather) throws IOException {
+        if (json.peek() != JsonToken.BEGIN_OBJECT) {
+            json.skipValue();
+            return false;
+        }
+        
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "temp":
+                    weather.setTemperature(json.nextDouble());
+                    break;
+                case "feels_like":
+                    weather.setFeelsLike(json.nextDouble());
+                    break;
+                case "humidity":
+                    weather.setHumidity((int) json.nextDouble());
+                    break;
+                case "pressure":
+                    weather.setPressure(json.nextDouble());
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+        return true;
+    }
+    
+    /**
+     * Read the first entry of the "weather" array; further conditions are skipped
+     */
+    private static boolean readCondition(JsonReader json, Weather weather) throws IOException {
+        if (json.peek() != JsonToken.BEGIN_ARRAY) {
+            json.skipValue();
+            return false;
+        }
+        
+        boolean found = false;
+        json.beginArray();
+        while (json.hasNext()) {
+            if (found || json.peek() != JsonToken.BEGIN_OBJECT) {
+                json.skipValue();
+                continue;
+            }
+            json.beginObject();
+            while (json.hasNext()) {
+                switch (json.nextName()) {
+                    case "main":
+                        weather.setMainCondition(nextString(json));
+                        break;
+                    case "description":
+                        weather.setDescription(nextString(json));
+                        break;
+                    case "icon":
+                        weather.setIcon(nextString(json));
+                        break;
+                    default:
+                        json.skipValue();
+                }
+            }
+            json.endObject();
+            found = true;
+        }
+        json.endArray();
+        return found;
+    }
+    
+    private static void readWind(JsonReader json, Weather weather) throws IOException {
+        if (json.peek() != JsonToken.BEGIN_OBJECT) {
+            json.skipValue();
+            return;
+        }
+        
+        json.beginObject();
+        while (json.hasNext()) {
+            String field = json.nextName();
+            if (json.peek() != JsonToken.NUMBER) {
+                json.skipValue();
+            } else if ("speed".equals(field)) {
+                weather.setWindSpeed(json.nextDouble());
+            } else if ("deg".equals(field)) {
+                weather.setWindDirection((int) json.nextDouble());
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+    
+    private static String readCountry(JsonReader json) throws IOException {
+        if (json.peek() != JsonToken.BEGIN_OBJECT) {
+            json.skipValue();
+            return null;
+        }
+        
+        String country = null;
+        json.beginObject();
+        while (json.hasNext()) {
+            if ("country".equals(json.nextName())) {
+                country = nextString(json);
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        return country;
+    }
+    
+    /**
+     * @return The next string value, or null for JSON null or a non-string value (which is skipped)
+     */
+    private static String nextString(JsonReader json) throws IOException {
+        JsonToken token = json.peek();
+        if (token == JsonToken.STRING) {
+            return json.nextString();
+        }
+        json.skipValue();
+        return null;
+    }
+} 
\ No newline at end of file
@@ -1,16 +1,35 @@
 package com.weathernews.service;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
+import com.weathernews.cache.SingleFlight;
+import com.weathernews.cache.WeatherCellCache;
+import com.weathernews.history.WeatherHistoryStore;
+import com.weathernews.http.CircuitOpenException;
+import com.weathernews.http.HttpTransport;
+import com.weathernews.http.RequestPriority;
+import com.weathernews.metrics.MetricsRegistry;
 import com.weathernews.model.Location;
 import com.weathernews.model.Weather;
-import okhttp3.OkHttpClient;
+import com.weathernews.persistence.ObservationLog;
 import okhttp3.Request;
 import okhttp3.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -18,19 +37,126 @@ import java.util.concurrent.TimeUnit;
  */
 public class WeatherService {
     private static final Logger logger = LoggerFactory.getLogger(WeatherService.class);
-    private static final String WEATHER_API_URL = "https://api.openweathermap.org/data/2.5/weather";
+    private static final String DEFAULT_API_URL = "https://api.openweathermap.org/data/2.5";
+    private static final int MAX_GROUP_SIZE = 20;
+    private static final int MAX_KNOWN_STATIONS = 50_000;
     
-    private final OkHttpClient httpClient;
-    private final Gson gson;
+    private final HttpTransport transport;
+    private final boolean ownsTransport;
     private final String apiKey;
+    private final String urlSuffix;
+    private String coordinatesUrlPrefix;
+    private String zipcodeUrlPrefix;
+    private String groupUrlPrefix;
+    private final WeatherResponseDecoder decoder = new WeatherResponseDecoder();
+    private final SingleFlight<String, Weather> inFlight = new SingleFlight<>();
+    private final Map<Long, Integer> stationIds = new ConcurrentHashMap<>();
+    private WeatherCellCache cellCache;
+    private double nearbyFallbackKm;
+    private WeatherHistoryStore historyStore;
+    private ObservationLog observationLog;
+    private int maxParallelRequests = 8;
+    private MetricsRegistry metrics;
     
     public WeatherService(String apiKey) {
+        this(apiKey, new HttpTransport(), true);
+    }
+    
+    /**
+     * Create the service on a shared transport; the transport is not closed by {@link #close()}
+     * @param apiKey The API key
+     * @param transport Shared HTTP transport
+     */
+    public WeatherService(String apiKey, HttpTransport transport) {
+        this(apiKey, transport, false);
+    }
+    
+    private WeatherService(String apiKey, HttpTransport transport, boolean ownsTransport) {
         this.apiKey = apiKey;
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(10, TimeUnit.SECONDS)
-                .readTimeout(10, TimeUnit.SECONDS)
-                .build();
-        this.gson = new Gson();
+        this.transport = transport;
+        this.ownsTransport = ownsTransport;
+        this.urlSuffix = "&appid=" + apiKey + "&units=imperial";
+        setApiUrl(DEFAULT_API_URL);
+    }
+    
+    /**
+     * Send weather requests to another server, e.g. a local mock of the API
+     * @param apiUrl Base URL of the API, e.g. "https://api.openweathermap.org/data/2.5"
+     */
+    public void setApiUrl(String apiUrl) {
+        if (apiUrl == null || apiUrl.trim().isEmpty()) {
+            throw new IllegalArgumentException("API URL cannot be null or empty");
+        }
+        String base = apiUrl.trim();
+        if (base.endsWith("/")) {
+            base = base.substring(0, base.length() - 1);
+        }
+        this.coordinatesUrlPrefix = base + "/weather?lat=";
+        this.zipcodeUrlPrefix = base + "/weather?zip=";
+        this.groupUrlPrefix = base + "/group?id=";
+    }
+    
+    /**
+     * Set the cache consulted by {@link #getWeatherByLocation(Location)}
+     * @param cellCache Grid cell weather cache, or null to disable caching
+     */
+    public void setCellCache(WeatherCellCache cellCache) {
+        this.cellCache = cellCache;
+    }
+    
+    public WeatherCellCache getCellCache() {
+        return cellCache;
+    }
+    
+    /**
+     * Serve a cache miss from the nearest fresh observation of another cell before calling
+     * upstream. Requires a cell cache.
+     * @param maxKm Maximum distance to the observation's coordinates, or 0 to always call upstream
+     */
+    public void setNearbyFallback(double maxKm) {
+        if (maxKm < 0) {
+            throw new IllegalArgumentException("Distance cannot be negative");
+        }
+        this.nearbyFallbackKm = maxKm;
+    }
+    
+    /**
+     * Keep the observations fetched from upstream for each 5-digit zipcode in a history store
+     * @param historyStore Store to record into, or null to stop recording
+     */
+    public void setHistoryStore(WeatherHistoryStore historyStore) {
+        this.historyStore = historyStore;
+    }
+    
+    public WeatherHistoryStore getHistoryStore() {
+        return historyStore;
+    }
+    
+    /**
+     * Persist every observation fetched from upstream
+     * @param observationLog Log to append to, or null to stop persisting
+     */
+    public void setObservationLog(ObservationLog observationLog) {
+        this.observationLog = observationLog;
+    }
+    
+    /**
+     * Set how many single-location requests {@link #getWeatherForLocations} runs concurrently
+     * @param maxParallelRequests Maximum concurrent requests, at least 1
+     */
+    public void setMaxParallelRequests(int maxParallelRequests) {
+        if (maxParallelRequests <= 0) {
+            throw new IllegalArgumentException("Max parallel requests must be positive");
+        }
+        this.maxParallelRequests = maxParallelRequests;
+    }
+    
+    /**
+     * Record latency and outcome of the public lookups and the time spent parsing responses
+     * @param metrics Registry to record into, or null to stop recording
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
     }
     
     /**
@@ -40,27 +166,166 @@ public class WeatherService {
      * @throws IOException if the API request fails
      */
     public Weather getWeatherByLocation(Location location) throws IOException {
+        return MetricsRegistry.time(metrics, "WeatherService.getWeatherByLocation", () -> loadWeather(location));
+    }
+    
+    private Weather loadWeather(Location location) throws IOException {
         if (location == null) {
             throw new IllegalArgumentException("Location cannot be null");
         }
         
-        String url = String.format("%s?lat=%.4f&lon=%.4f&appid=%s&units=imperial",
-                WEATHER_API_URL, location.getLatitude(), location.getLongitude(), apiKey);
+        Weather cached = getCached(location);
+        if (cached != null) {
+            return relabel(cached, location);
+        }
         
-        Request request = new Request.Builder()
-                .url(url)
-                .build();
+        return fetchForLocation(location);
+    }
+    
+    /**
+     * Refresh the cached weather of a location's cell ahead of expiry, so the next lookup
+     * does not miss. Used to keep popular locations warm.
+     * @param location The location
+     * @param ahead How far ahead of expiry to refresh
+     * @param unit Unit of ahead
+     * @return True if the cell was fetched, false if it is still fresh or there is no cache
+     * @throws IOException if the API request fails
+     */
+    public boolean refreshWeather(Location location, long ahead, TimeUnit unit) throws IOException {
+        if (location == null) {
+            throw new IllegalArgumentException("Location cannot be null");
+        }
+        if (cellCache == null || !cellCache.isExpiring(location, unit.toNanos(ahead))) {
+            return false;
+        }
+        fetchFromUpstream(location);
+        return true;
+    }
+    
+    /**
+     * Fetch weather for many locations at once. Locations whose station id is known from an
+     * earlier response are fetched with multi-city group calls of up to 20 stations; the rest
+     * are fetched with a bounded number of parallel single calls.
+     * @param locations The locations to get weather for
+     * @return Weather keyed by the given location instances, in iteration order. Locations
+     *         whose weather could not be fetched are left out.
+     * @throws IOException if no location could be fetched
+     */
+    public Map<Location, Weather> getWeatherForLocations(Collection<Location> locations) throws IOException {
+        return MetricsRegistry.time(metrics, "WeatherService.getWeatherForLocations", () -> loadWeatherForLocations(locations));
+    }
+    
+    private Map<Location, Weather> loadWeatherForLocations(Collection<Location> locations) throws IOException {
+        if (locations == null) {
+            throw new IllegalArgumentException("Locations cannot be null");
+        }
         
-        try (Response response = httpClient.execute(request)) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Weather API request failed: " + response.code() + " " + response.message());
+        Map<Location, Weather> results = new LinkedHashMap<>();
+        Map<Integer, List<Location>> byStation = new LinkedHashMap<>();
+        List<Location> singles = new ArrayList<>();
+        for (Location location : locations) {
+            if (location == null) {
+                throw new IllegalArgumentException("Location cannot be null");
             }
+            // Reserve the slot so results keep the caller's order
+            results.put(location, null);
             
-            String responseBody = response.body().string();
-            return parseWeatherResponse(responseBody, location);
+            Weather cached = getCached(location);
+            if (cached != null) {
+                results.put(location, relabel(cached, location));
+                continue;
+            }
+            Integer stationId = stationIds.get(coordinateKey(location));
+            if (stationId != null) {
+                byStation.computeIfAbsent(stationId, id -> new ArrayList<>()).add(location);
+            } else {
+                singles.add(location);
+            }
+        }
+        
+        // Known stations: one group call per 20 ids, falling back to single calls for any misses
+        List<Integer> ids = new ArrayList<>(byStation.keySet());
+        for (int start = 0; start < ids.size(); start += MAX_GROUP_SIZE) {
+            List<Integer> group = ids.subList(start, Math.min(start + MAX_GROUP_SIZE, ids.size()));
+            Map<Integer, Weather> observations;
+            try {
+                observations = fetchGroup(group);
+            } catch (IOException e) {
+                logger.warn("Weather group request for {} stations failed, using single requests: {}",
+                        group.size(), e.getMessage());
+                observations = Collections.emptyMap();
+            }
+            for (Integer id : group) {
+                Weather observation = observations.get(id);
+                for (Location location : byStation.get(id)) {
+                    if (observation == null) {
+                        singles.add(location);
+                        continue;
+                    }
+                    if (cellCache != null) {
+                        cellCache.put(location, observation);
+                    }
+                    Weather relabeled = relabel(observation, location);
+                    persist(location, relabeled);
+                    recordHistory(location, relabeled);
+                    results.put(location, relabeled);
+                }
+            }
+        }
+        
+        IOException failure = fetchInParallel(singles, results);
+        results.values().removeIf(Objects::isNull);
+        if (results.isEmpty() && failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+    
+    /**
+     * Look up the location's cell, then, if enabled, the nearest fresh observation around it
+     * @return The cached observation, or null if upstream has to be called
+     */
+    private Weather getCached(Location location) {
+        if (cellCache == null) {
+            return null;
+        }
+        Weather cached = cellCache.get(location);
+        if (cached == null && nearbyFallbackKm > 0) {
+            cached = cellCache.getNearby(location, nearbyFallbackKm);
+        }
+        return cached;
+    }
+    
+    /**
+     * Fetch weather for a location from upstream, bypassing the cell cache lookup.
+     * While the endpoint's circuit breaker is open, the cell's expired observation is served if present.
+     */
+    private Weather fetchForLocation(Location location) throws IOException {
+        try {
+            return fetchFromUpstream(location);
+        } catch (CircuitOpenException e) {
+            Weather stale = cellCache != null ? cellCache.getStale(location) : null;
+            if (stale == null) {
+                throw e;
+            }
+            logger.debug("Serving expired weather for {}: {}", location, e.getMessage());
+            return relabel(stale, location);
         }
     }
     
+    private Weather fetchFromUpstream(Location location) throws IOException {
+        String url = coordinatesUrl(location.getLatitude(), location.getLongitude());
+        
+        // Concurrent requests for the same cell (or coordinates) share one upstream call
+        String flightKey = cellCache != null
+                ? "cell:" + cellCache.cellOf(location.getLatitude(), location.getLongitude())
+                : url;
+        Weather weather = inFlight.execute(flightKey, () -> fetchWeather(url, location));
+        
+        return recordHistory(location,
+                location.toString().equals(weather.getLocation()) ? weather : relabel(weather, location));
+    }
+    
     /**
      * Fetch weather information by zipcode
      * @param zipcode The US zipcode
@@ -68,85 +333,234 @@ public class WeatherService {
      * @throws IOException if the API request fails
      */
     public Weather getWeatherByZipcode(String zipcode) throws IOException {
+        return MetricsRegistry.time(metrics, "WeatherService.getWeatherByZipcode", () -> loadWeatherByZipcode(zipcode));
+    }
+    
+    private Weather loadWeatherByZipcode(String zipcode) throws IOException {
         if (zipcode == null || zipcode.trim().isEmpty()) {
             throw new IllegalArgumentException("Zipcode cannot be null or empty");
         }
         
-        String url = String.format("%s?zip=%s,US&appid=%s&units=imperial",
-                WEATHER_API_URL, zipcode.trim(), apiKey);
+        String url = zipcodeUrlPrefix + zipcode.trim() + ",US" + urlSuffix;
         
+        return inFlight.execute(url, () -> fetchWeather(url, null));
+    }
+    
+    /**
+     * Execute a weather API request, caching the observation when the location is known
+     * @param url The request URL
+     * @param location The location (can be null)
+     * @return Weather object
+     * @throws IOException if the API request fails
+     */
+    private Weather fetchWeather(String url, Location location) throws IOException {
         Request request = new Request.Builder()
                 .url(url)
                 .build();
         
-        try (Response response = httpClient.execute(request)) {
+        try (Response response = transport.execute(request)) {
             if (!response.isSuccessful()) {
                 throw new IOException("Weather API request failed: " + response.code() + " " + response.message());
             }
             
-            String responseBody = response.body().string();
-            return parseWeatherResponse(responseBody, null);
+            Weather weather = MetricsRegistry.time(metrics, "WeatherService.decode",
+                    () -> decoder.decode(response.body().charStream(), location));
+            logger.info("Successfully fetched weather data for {}", weather.getLocation());
+            persist(location, weather);
+            if (location != null) {
+                if (cellCache != null) {
+                    cellCache.put(location, weather);
+                }
+                rememberStation(location, weather.getCityId());
+            }
+            return weather;
         }
     }
     
     /**
-     * Parse the weather API response into a Weather object
-     * @param responseBody The JSON response from the API
-     * @param location The location (can be null)
-     * @return Weather object
+     * Fetch current weather for up to 20 stations with one group request
+     * @param ids Station ids
+     * @return Observations keyed by station id; stations missing from the response are absent
+     * @throws IOException if the API request fails
      */
-    private Weather parseWeatherResponse(String responseBody, Location location) {
-        JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
-        
-        Weather weather = new Weather();
-        
-        // Location information
-        if (location != null) {
-            weather.setLocation(location.toString());
-        } else {
-            String cityName = jsonObject.get("name").getAsString();
-            String country = jsonObject.getAsJsonObject("sys").get("country").getAsString();
-            weather.setLocation(cityName + ", " + country);
+    private Map<Integer, Weather> fetchGroup(List<Integer> ids) throws IOException {
+        StringBuilder url = new StringBuilder(groupUrlPrefix.length() + ids.size() * 9 + urlSuffix.length());
+        url.append(groupUrlPrefix);
+        for (int i = 0; i < ids.size(); i++) {
+            if (i > 0) {
+                url.append(',');
+            }
+            url.append(ids.get(i).intValue());
         }
+        url.append(urlSuffix);
         
-        // Main weather data
-        JsonObject main = jsonObject.getAsJsonObject("main");
-        weather.setTemperature(main.get("temp").getAsDouble());
-        weather.setFeelsLike(main.get("feels_like").getAsDouble());
-        weather.setHumidity(main.get("humidity").getAsInt());
-        weather.setPressure(main.get("pressure").getAsDouble());
-        
-        // Weather condition
-        JsonObject weatherCondition = jsonObject.getAsJsonArray("weather").get(0).getAsJsonObject();
-        weather.setMainCondition(weatherCondition.get("main").getAsString());
-        weather.setDescription(weatherCondition.get("description").getAsString());
-        weather.setIcon(weatherCondition.get("icon").getAsString());
+        Request request = new Request.Builder()
+                .url(url.toString())
+                .build();
         
-        // Wind data
-        if (jsonObject.has("wind")) {
-            JsonObject wind = jsonObject.getAsJsonObject("wind");
-            weather.setWindSpeed(wind.get("speed").getAsDouble());
-            if (wind.has("deg")) {
-                weather.setWindDirection(wind.get("deg").getAsInt());
+        try (Response response = transport.execute(request)) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Weather group request failed: " + response.code() + " " + response.message());
             }
+            
+            Map<Integer, Weather> observations = MetricsRegistry.time(metrics, "WeatherService.decodeGroup",
+                    () -> decoder.decodeGroup(response.body().charStream()));
+            logger.info("Successfully fetched weather data for {} of {} stations", observations.size(), ids.size());
+            return observations;
+        }
+    }
+    
+    /**
+     * Fetch single locations on virtual threads, at most {@link #maxParallelRequests} at a time
+     * @param locations Locations to fetch
+     * @param results Map receiving the fetched weather
+     * @return The first failure, or null if every location was fetched
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    private IOException fetchInParallel(List<Location> locations, Map<Location, Weather> results)
+            throws InterruptedIOException {
+        if (locations.isEmpty()) {
+            return null;
         }
         
-        // Visibility
-        if (jsonObject.has("visibility")) {
-            weather.setVisibility(jsonObject.get("visibility").getAsInt());
+        Semaphore permits = new Semaphore(maxParallelRequests);
+        RequestPriority priority = RequestPriority.current();
+        Map<Location, Future<Weather>> futures = new LinkedHashMap<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Location location : locations) {
+                futures.put(location, executor.submit(() -> {
+                    permits.acquire();
+                    RequestPriority.set(priority);
+                    try {
+                        return fetchForLocation(location);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
         }
         
-        logger.info("Successfully fetched weather data for {}", weather.getLocation());
+        IOException failure = null;
+        for (Map.Entry<Location, Future<Weather>> entry : futures.entrySet()) {
+            try {
+                results.put(entry.getKey(), entry.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted fetching weather for multiple locations");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                logger.warn("Weather request for {} failed: {}", entry.getKey(), cause.getMessage());
+                if (failure == null) {
+                    failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                }
+            }
+        }
+        return failure;
+    }
+    
+    /**
+     * Remember which station served a location so later multi-location fetches can use group calls
+     */
+    private void rememberStation(Location location, int stationId) {
+        if (stationId == 0) {
+            return;
+        }
+        if (stationIds.size() >= MAX_KNOWN_STATIONS) {
+            stationIds.clear();
+        }
+        stationIds.put(coordinateKey(location), stationId);
+    }
+    
+    /**
+     * Add an observation just fetched from upstream to the history of the location's 5-digit
+     * zipcode, if one is kept. Cached observations are not recorded: they are not new readings.
+     * @return The observation
+     */
+    private Weather recordHistory(Location location, Weather weather) {
+        if (historyStore != null) {
+            String zipcode = ZipcodeService.toCanonicalZipcode(location.getZipcode());
+            if (zipcode != null) {
+                historyStore.record(zipcode, System.currentTimeMillis(), weather);
+            }
+        }
         return weather;
     }
     
+    /**
+     * Append a fetched observation to the observation log, keyed by the 5-digit zipcode when known
+     */
+    private void persist(Location location, Weather weather) {
+        if (observationLog == null) {
+            return;
+        }
+        String zipcode = location != null ? ZipcodeService.toCanonicalZipcode(location.getZipcode()) : null;
+        String key = zipcode != null ? zipcode : weather.getLocation();
+        if (key != null) {
+            observationLog.append(key, weather);
+        }
+    }
+    
+    /**
+     * @return Key identifying the location's coordinates at the 4-decimal precision used in request URLs
+     */
+    private static long coordinateKey(Location location) {
+        long latitude = Math.round(location.getLatitude() * 10_000);
+        long longitude = Math.round(location.getLongitude() * 10_000);
+        return latitude << 32 | (longitude & 0xFFFFFFFFL);
+    }
+    
+    private static Weather relabel(Weather weather, Location location) {
+        Weather copy = new Weather(weather);
+        copy.setLocation(location.toString());
+        return copy;
+    }
+    
+    /**
+     * Build the coordinates request URL from the precomputed prefix and suffix
+     * @param latitude Latitude in degrees
+     * @param longitude Longitude in degrees
+     * @return The request URL with both coordinates rounded to 4 decimal places
+     */
+    private String coordinatesUrl(double latitude, double longitude) {
+        StringBuilder url = new StringBuilder(coordinatesUrlPrefix.length() + 30 + urlSuffix.length());
+        url.append(coordinatesUrlPrefix);
+        appendCoordinate(url, latitude);
+        url.append("&lon=");
+        appendCoordinate(url, longitude);
+        return url.append(urlSuffix).toString();
+    }
+    
+    /**
+     * Append a coordinate with exactly 4 decimal places, independent of the default locale
+     * @param url The builder to append to
+     * @param value Coordinate in degrees
+     */
+    static void appendCoordinate(StringBuilder url, double value) {
+        long scaled = Math.round(value * 10_000);
+        if (scaled < 0) {
+            url.append('-');
+            scaled = -scaled;
+        }
+        url.append(scaled / 10_000).append('.');
+        int fraction = (int) (scaled % 10_000);
+        if (fraction < 1000) {
+            url.append('0');
+        }
+        if (fraction < 100) {
+            url.append('0');
+        }
+        if (fraction < 10) {
+            url.append('0');
+        }
+        url.append(fraction);
+    }
+    
     /**
      * Clean up resources
      */
     public void close() {
-        if (httpClient != null) {
-            httpClient.dispatcher().executorService().shutdown();
-            httpClient.connectionPool().evictAll();
+        if (ownsTransport) {
+            transport.close();
         }
     }
 } 
\ No newline at end of file
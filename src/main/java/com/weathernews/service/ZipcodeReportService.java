@@ -0,0 +1,162 @@
+package com.weathernews.service;
+
+import com.weathernews.http.RequestPriority;
+import com.weathernews.model.Location;
+import com.weathernews.model.NewsArticle;
+import com.weathernews.model.Weather;
+import com.weathernews.model.ZipcodeReport;
+import com.weathernews.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Builds a {@link ZipcodeReport} by running the zipcode lookups as a dependency graph.
+ * The zipcode is geocoded once; weather (by the resolved coordinates) and news are
+ * then fetched concurrently, so a report costs one geocode plus the slowest of the
+ * two downstream calls. Every stage runs with the {@link RequestPriority} of the caller.
+ */
+public class ZipcodeReportService {
+    private static final Logger logger = LoggerFactory.getLogger(ZipcodeReportService.class);
+    
+    private final ZipcodeService zipcodeService;
+    private final WeatherService weatherService;
+    private final NewsService newsService;
+    private final ExecutorService executor;
+    private final int maxArticles;
+    
+    public ZipcodeReportService(ZipcodeService zipcodeService, WeatherService weatherService,
+                                NewsService newsService, int maxArticles) {
+        this.zipcodeService = zipcodeService;
+        this.weatherService = weatherService;
+        this.newsService = newsService;
+        this.maxArticles = maxArticles;
+        this.executor = Executors.newCachedThreadPool(new NamedThreadFactory("zipcode-report"));
+    }
+    
+    /**
+     * Start building the report for a zipcode without blocking the caller
+     * @param zipcode The US zipcode
+     * @return Future completed with the report, or exceptionally with the first failed stage
+     */
+    public CompletableFuture<ZipcodeReport> getReportAsync(String zipcode) {
+        RequestPriority priority = RequestPriority.current();
+        
+        CompletableFuture<Location> locationStage = CompletableFuture.completedFuture(zipcode)
+                .thenApplyAsync(stage(priority, zipcodeService::getLocationByZipcode), executor);
+        
+        CompletableFuture<Weather> weatherStage = locationStage.thenApplyAsync(
+                stage(priority, weatherService::getWeatherByLocation), executor);
+        
+        CompletableFuture<List<NewsArticle>> newsStage = locationStage.thenApplyAsync(
+                stage(priority, location -> newsService.getLocalNews(location, maxArticles)), executor);
+        
+        return weatherStage.thenCombine(newsStage, (weather, articles) ->
+                new ZipcodeReport(zipcode, locationStage.join(), weather, articles));
+    }
+    
+    /**
+     * Adapt a blocking service call into a pipeline stage that runs with the given priority
+     * and reports IOExceptions as UncheckedIOException
+     */
+    private static <T, R> Function<T, R> stage(RequestPriority priority, Stage<T, R> call) {
+        return input -> {
+            RequestPriority previous = RequestPriority.set(priority);
+            try {
+                return call.apply(input);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                RequestPriority.set(previous);
+            }
+        };
+    }
+    
+    /**
+     * Build the report for a zipcode, blocking until all stages complete
+     * @param zipcode The US zipcode
+     * @return ZipcodeReport with location, weather and news
+     * @throws IOException if any of the API requests fail
+     * @throws IllegalArgumentException if the zipcode is invalid or unknown
+     */
+    public ZipcodeReport getReport(String zipcode) throws IOException {
+        try {
+            return getReportAsync(zipcode).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while building report for zipcode: " + zipcode, e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+    
+    /**
+     * Find the exception a failed report future was completed with, unwrapping the
+     * CompletionException and UncheckedIOException layers added by the pipeline
+     * @param error The failure passed to a completion callback
+     * @return The original exception thrown by the failing service
+     */
+    public static Throwable failureCause(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof UncheckedIOException) {
+            return cause.getCause();
+        }
+        return cause;
+    }
+    
+    /**
+     * Translate a failed stage back into the exception the blocking services would have thrown
+     * @param error The failure cause
+     * @return IOException to rethrow; runtime exceptions are thrown directly
+     */
+    static IOException unwrap(Throwable error) {
+        Throwable cause = failureCause(error);
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+    
+    /**
+     * Clean up resources
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        logger.debug("Zipcode report executor shut down");
+    }
+    
+    /**
+     * A blocking service call used as a pipeline stage
+     */
+    @FunctionalInterface
+    private interface Stage<T, R> {
+        R apply(T input) throws IOException;
+    }
+} 
\ No newline at end of file
@@ -3,34 +3,161 @@ package com.weathernews.service;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.weathernews.cache.SingleFlight;
+import com.weathernews.cache.ZipcodeLocationCache;
+import com.weathernews.geo.SpatialIndex;
+import com.weathernews.geo.ZipcodeGazetteer;
+import com.weathernews.http.CircuitOpenException;
+import com.weathernews.http.HttpTransport;
+import com.weathernews.http.RequestPriority;
+import com.weathernews.metrics.MetricsRegistry;
 import com.weathernews.model.Location;
-import okhttp3.OkHttpClient;
+import com.weathernews.persistence.ObservationLog;
+import com.weathernews.prefetch.PopularityTracker;
 import okhttp3.Request;
 import okhttp3.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Service to convert US zipcodes to location data using OpenWeatherMap Geocoding API
  */
 public class ZipcodeService {
     private static final Logger logger = LoggerFactory.getLogger(ZipcodeService.class);
-    private static final String GEOCODING_API_URL = "https://api.openweathermap.org/geo/1.0/zip";
+    private static final String DEFAULT_API_URL = "https://api.openweathermap.org/geo/1.0";
+    private static final Pattern ZIPCODE_PATTERN = Pattern.compile("^\\d{5}(-\\d{4})?$");
     
-    private final OkHttpClient httpClient;
+    private final HttpTransport transport;
+    private final boolean ownsTransport;
     private final Gson gson;
     private final String apiKey;
+    private final SingleFlight<Integer, Location> inFlight = new SingleFlight<>();
+    private ZipcodeLocationCache locationCache;
+    private ZipcodeGazetteer gazetteer;
+    private boolean offlineOnly;
+    private MetricsRegistry metrics;
+    private ObservationLog observationLog;
+    private PopularityTracker popularityTracker;
+    private SpatialIndex<String, Location> locationIndex;
+    private String zipUrl;
+    private String directUrl;
     
     public ZipcodeService(String apiKey) {
+        this(apiKey, new HttpTransport(), true);
+    }
+    
+    /**
+     * Create the service on a shared transport; the transport is not closed by {@link #close()}
+     * @param apiKey The API key
+     * @param transport Shared HTTP transport
+     */
+    public ZipcodeService(String apiKey, HttpTransport transport) {
+        this(apiKey, transport, false);
+    }
+    
+    private ZipcodeService(String apiKey, HttpTransport transport, boolean ownsTransport) {
         this.apiKey = apiKey;
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(10, TimeUnit.SECONDS)
-                .readTimeout(10, TimeUnit.SECONDS)
-                .build();
+        this.transport = transport;
+        this.ownsTransport = ownsTransport;
         this.gson = new Gson();
+        setApiUrl(DEFAULT_API_URL);
+    }
+    
+    /**
+     * Send geocoding requests to another server, e.g. a local mock of the API
+     * @param apiUrl Base URL of the API, e.g. "https://api.openweathermap.org/geo/1.0"
+     */
+    public void setApiUrl(String apiUrl) {
+        if (apiUrl == null || apiUrl.trim().isEmpty()) {
+            throw new IllegalArgumentException("API URL cannot be null or empty");
+        }
+        String base = apiUrl.trim();
+        if (base.endsWith("/")) {
+            base = base.substring(0, base.length() - 1);
+        }
+        this.zipUrl = base + "/zip";
+        this.directUrl = base + "/direct";
+    }
+    
+    /**
+     * Set the cache consulted before calling the geocoding API
+     * @param locationCache Zipcode location cache, or null to disable caching
+     */
+    public void setLocationCache(ZipcodeLocationCache locationCache) {
+        this.locationCache = locationCache;
+    }
+    
+    public ZipcodeLocationCache getLocationCache() {
+        return locationCache;
+    }
+    
+    /**
+     * Count interactive zipcode lookups, e.g. to find zipcodes worth prefetching.
+     * Batch and prefetch lookups are not counted.
+     * @param popularityTracker Tracker to count into, or null to stop counting
+     */
+    public void setPopularityTracker(PopularityTracker popularityTracker) {
+        this.popularityTracker = popularityTracker;
+    }
+    
+    /**
+     * Resolve zipcodes from an offline gazetteer before falling back to the geocoding API
+     * @param gazetteer Offline zipcode table, or null to always use the API
+     * @param offlineOnly If true, zipcodes missing from the gazetteer are reported as not found
+     *                    instead of being sent to the API
+     */
+    public void setGazetteer(ZipcodeGazetteer gazetteer, boolean offlineOnly) {
+        this.gazetteer = gazetteer;
+        this.offlineOnly = gazetteer != null && offlineOnly;
+    }
+    
+    /**
+     * Record latency and outcome of the public lookups and the time spent parsing responses
+     * @param metrics Registry to record into, or null to stop recording
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+    
+    /**
+     * Persist every location fetched from upstream
+     * @param observationLog Log to append to, or null to stop persisting
+     */
+    public void setObservationLog(ObservationLog observationLog) {
+        this.observationLog = observationLog;
+    }
+    
+    /**
+     * Index every resolved zipcode by its coordinates, for {@link #getLocationsWithin}
+     * @param locationIndex Index to add resolved locations to, or null to stop indexing
+     */
+    public void setLocationIndex(SpatialIndex<String, Location> locationIndex) {
+        this.locationIndex = locationIndex;
+    }
+    
+    /**
+     * Find the resolved zipcodes around a coordinate, e.g. to sweep a region in a batch job
+     * without scanning every known zipcode
+     * @param latitude Latitude in degrees
+     * @param longitude Longitude in degrees
+     * @param radiusKm Search radius in kilometres
+     * @return Locations of the zipcodes resolved so far within the radius, nearest first
+     * @throws IllegalStateException if no location index is set
+     */
+    public List<Location> getLocationsWithin(double latitude, double longitude, double radiusKm) {
+        if (locationIndex == null) {
+            throw new IllegalStateException("Location index is not enabled");
+        }
+        List<Location> locations = new ArrayList<>();
+        for (SpatialIndex.Match<String, Location> match : locationIndex.within(latitude, longitude, radiusKm)) {
+            locations.add(match.getValue());
+        }
+        return locations;
     }
     
     /**
@@ -41,13 +168,17 @@ public class ZipcodeService {
      * @throws IllegalArgumentException if the zipcode is invalid
      */
     public Location getLocationByZipcode(String zipcode) throws IOException {
+        return MetricsRegistry.time(metrics, "ZipcodeService.getLocationByZipcode", () -> indexLocation(resolveZipcode(zipcode)));
+    }
+    
+    private Location resolveZipcode(String zipcode) throws IOException {
         if (zipcode == null || zipcode.trim().isEmpty()) {
             throw new IllegalArgumentException("Zipcode cannot be null or empty");
         }
         
         // Validate zipcode format (basic US zipcode validation)
         String cleanZipcode = zipcode.trim();
-        if (!cleanZipcode.matches("^\\d{5}(-\\d{4})?$")) {
+        if (!ZIPCODE_PATTERN.matcher(cleanZipcode).matches()) {
             throw new IllegalArgumentException("Invalid US zipcode format. Expected format: 12345 or 12345-6789");
         }
         
@@ -56,14 +187,78 @@ public class ZipcodeService {
             cleanZipcode = cleanZipcode.substring(0, 5);
         }
         
+        int zipKey = toZipKey(cleanZipcode);
+        if (popularityTracker != null && RequestPriority.current() == RequestPriority.INTERACTIVE) {
+            popularityTracker.record(zipKey);
+        }
+        if (gazetteer != null) {
+            Location offline = gazetteer.lookup(zipKey, zipcode);
+            if (offline != null) {
+                return offline;
+            }
+            if (offlineOnly) {
+                throw new IllegalArgumentException("Zipcode not found: " + zipcode);
+            }
+        }
+        
+        if (locationCache != null) {
+            Location cached = locationCache.get(zipKey);
+            if (cached != null) {
+                return new Location(zipcode, cached.getCity(), cached.getState(),
+                        cached.getLatitude(), cached.getLongitude());
+            }
+        }
+        
+        // Concurrent lookups of the same zipcode share one geocoding request
+        String fiveDigitZipcode = cleanZipcode;
+        Location location;
+        try {
+            location = inFlight.execute(zipKey, () -> fetchLocation(fiveDigitZipcode, zipcode, zipKey));
+        } catch (CircuitOpenException e) {
+            // Locations rarely change; an expired entry beats failing while the API is unavailable
+            location = locationCache != null ? locationCache.getStale(zipKey) : null;
+            if (location == null) {
+                throw e;
+            }
+        }
+        if (!zipcode.equals(location.getZipcode())) {
+            return new Location(zipcode, location.getCity(), location.getState(),
+                    location.getLatitude(), location.getLongitude());
+        }
+        return location;
+    }
+    
+    /**
+     * Add a resolved location to the location index, keyed by its 5-digit zipcode
+     * @return The location
+     */
+    private Location indexLocation(Location location) {
+        if (locationIndex != null && location.getZipcode() != null && location.getZipcode().length() >= 5) {
+            String key = location.getZipcode().substring(0, 5);
+            if (locationIndex.get(key) == null) {
+                locationIndex.put(key, location.getLatitude(), location.getLongitude(), location);
+            }
+        }
+        return location;
+    }
+    
+    /**
+     * Call the geocoding API for a zipcode and cache the result
+     * @param cleanZipcode The 5-digit zipcode sent to the API
+     * @param zipcode The zipcode as entered by the caller
+     * @param zipKey The packed zipcode used as cache key
+     * @return Location object
+     * @throws IOException if the API request fails
+     */
+    private Location fetchLocation(String cleanZipcode, String zipcode, int zipKey) throws IOException {
         String url = String.format("%s?zip=%s,US&appid=%s", 
-                GEOCODING_API_URL, cleanZipcode, apiKey);
+                zipUrl, cleanZipcode, apiKey);
         
         Request request = new Request.Builder()
                 .url(url)
                 .build();
         
-        try (Response response = httpClient.execute(request)) {
+        try (Response response = transport.execute(request)) {
             if (!response.isSuccessful()) {
                 if (response.code() == 404) {
                     throw new IllegalArgumentException("Zipcode not found: " + zipcode);
@@ -72,7 +267,15 @@ public class ZipcodeService {
             }
             
             String responseBody = response.body().string();
-            return parseLocationResponse(responseBody, zipcode);
+            Location location = MetricsRegistry.time(metrics, "ZipcodeService.parse",
+                    () -> parseLocationResponse(responseBody, zipcode));
+            if (locationCache != null) {
+                locationCache.put(zipKey, location);
+            }
+            if (observationLog != null) {
+                observationLog.append(cleanZipcode, location);
+            }
+            return location;
         }
     }
     
@@ -84,6 +287,10 @@ public class ZipcodeService {
      * @throws IOException if the API request fails
      */
     public Location getLocationByCity(String city, String state) throws IOException {
+        return MetricsRegistry.time(metrics, "ZipcodeService.getLocationByCity", () -> resolveCity(city, state));
+    }
+    
+    private Location resolveCity(String city, String state) throws IOException {
         if (city == null || city.trim().isEmpty()) {
             throw new IllegalArgumentException("City cannot be null or empty");
         }
@@ -91,20 +298,26 @@ public class ZipcodeService {
             throw new IllegalArgumentException("State cannot be null or empty");
         }
         
-        String url = String.format("https://api.openweathermap.org/geo/1.0/direct?q=%s,%s,US&limit=1&appid=%s", 
-                city.trim(), state.trim(), apiKey);
+        String url = String.format("%s?q=%s,%s,US&limit=1&appid=%s", 
+                directUrl, city.trim(), state.trim(), apiKey);
         
         Request request = new Request.Builder()
                 .url(url)
                 .build();
         
-        try (Response response = httpClient.execute(request)) {
+        try (Response response = transport.execute(request)) {
             if (!response.isSuccessful()) {
                 throw new IOException("Geocoding API request failed: " + response.code() + " " + response.message());
             }
             
             String responseBody = response.body().string();
-            return parseDirectLocationResponse(responseBody, city, state);
+            Location location = MetricsRegistry.time(metrics, "ZipcodeService.parse",
+                    () -> parseDirectLocationResponse(responseBody, city, state));
+            if (observationLog != null) {
+                observationLog.append(location.getZipcode() != null
+                        ? location.getZipcode() : city.trim() + "," + state.trim(), location);
+            }
+            return location;
         }
     }
     
@@ -114,7 +327,7 @@ public class ZipcodeService {
      * @param originalZipcode The original zipcode for reference
      * @return Location object
      */
-    private Location parseLocationResponse(String responseBody, String originalZipcode) {
+    Location parseLocationResponse(String responseBody, String originalZipcode) {
         JsonObject jsonObject = gson.fromJson(responseBody, JsonObject.class);
         
         Location location = new Location();
@@ -151,7 +364,7 @@ public class ZipcodeService {
      * @param state The state name
      * @return Location object
      */
-    private Location parseDirectLocationResponse(String responseBody, String city, String state) {
+    Location parseDirectLocationResponse(String responseBody, String city, String state) {
         JsonArray jsonArray = gson.fromJson(responseBody, JsonArray.class);
         
         if (jsonArray.size() == 0) {
@@ -187,16 +400,54 @@ public class ZipcodeService {
         }
         
         String cleanZipcode = zipcode.trim();
-        return cleanZipcode.matches("^\\d{5}(-\\d{4})?$");
+        return ZIPCODE_PATTERN.matcher(cleanZipcode).matches();
+    }
+    
+    /**
+     * Reduce a zipcode to the 5-digit form used to key per-zipcode data, so "90210" and
+     * "90210-1234" share one entry
+     * @param zipcode Zipcode in 12345 or 12345-6789 format
+     * @return The 5-digit zipcode, or null if the zipcode is invalid
+     */
+    public static String toCanonicalZipcode(String zipcode) {
+        if (zipcode == null) {
+            return null;
+        }
+        String cleanZipcode = zipcode.trim();
+        if (!ZIPCODE_PATTERN.matcher(cleanZipcode).matches()) {
+            return null;
+        }
+        return cleanZipcode.length() == 5 ? cleanZipcode : cleanZipcode.substring(0, 5);
+    }
+    
+    /**
+     * Pack a US zipcode into a primitive int key (its 5-digit prefix)
+     * @param zipcode Zipcode in 12345 or 12345-6789 format
+     * @return The 5-digit zipcode as an int (e.g. "02134" becomes 2134)
+     * @throws IllegalArgumentException if the zipcode is invalid
+     */
+    public static int toZipKey(String zipcode) {
+        if (zipcode == null) {
+            throw new IllegalArgumentException("Zipcode cannot be null or empty");
+        }
+        String cleanZipcode = zipcode.trim();
+        if (!ZIPCODE_PATTERN.matcher(cleanZipcode).matches()) {
+            throw new IllegalArgumentException("Invalid US zipcode format. Expected format: 12345 or 12345-6789");
+        }
+        
+        int key = 0;
+        for (int i = 0; i < 5; i++) {
+            key = key * 10 + (cleanZipcode.charAt(i) - '0');
+        }
+        return key;
     }
     
     /**
      * Clean up resources
      */
     public void close() {
-        if (httpClient != null) {
-            httpClient.dispatcher().executorService().shutdown();
-            httpClient.connectionPool().evictAll();
+        if (ownsTransport) {
+            transport.close();
         }
     }
 } 
\ No newline at end of file
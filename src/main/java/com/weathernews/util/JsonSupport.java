@@ -0,0 +1,28 @@
+package com.weathernews.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+
+import java.time.LocalDateTime;
+
+/**
+ * Shared Gson configuration for writing model objects as JSON
+ */
+public final class JsonSupport {
+    
+    private JsonSupport() {}
+    
+    /**
+     * Create a Gson instance that writes dates as ISO-8601 strings and omits null fields
+     * @return Configured Gson
+     */
+    public static Gson createGson() {
+        return new GsonBuilder()
+                .registerTypeAdapter(LocalDateTime.class,
+                        (JsonSerializer<LocalDateTime>) (value, type, context) -> new JsonPrimitive(value.toString()))
+                .disableHtmlEscaping()
+                .create();
+    }
+} 
\ No newline at end of file